@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Collects items into a Javascript array and passes it to a function each
+ * time it holds a full batch, so the function is called once per batch
+ * rather than once per item.  The same array is refilled for every batch,
+ * so the function must copy anything it wants to keep, and its length is
+ * set to the batch's before each call, whatever the function did to it.
+ */
+class BatchBuffer {
+
+    private final Context cx;
+    private final Scriptable scope;
+    private final Scriptable thisObj;
+    private final Function func;
+    private final int size;
+    private final NativeArray batch;
+    private final Object[] params;
+    private int count;
+
+    BatchBuffer(Context cx, Scriptable scope, Scriptable thisObj, Function func, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + size);
+        }
+        this.cx = cx;
+        this.scope = scope;
+        this.thisObj = thisObj;
+        this.func = func;
+        this.size = size;
+        this.batch = (NativeArray)cx.newArray(ScriptableObject.getTopLevelScope(scope), size);
+        this.params = new Object[] {batch};
+    }
+
+    /**
+     * Creates a buffer from the <code>(size, func)</code> arguments of an
+     * eachBatch call.
+     */
+    static BatchBuffer fromArgs(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+        return new BatchBuffer(cx, scope, thisObj, (Function)args[1], ((Number)args[0]).intValue());
+    }
+
+    void add(Object item) {
+        batch.put(count++, batch, item);
+        if (count == size) {
+            flush();
+        }
+    }
+
+    void addAll(Iterator items) {
+        while (items.hasNext()) {
+            add(items.next());
+        }
+        flush();
+    }
+
+    void addLines(BufferedReader reader) throws IOException {
+        String line = null;
+        while ((line = reader.readLine()) != null) {
+            add(line);
+        }
+        flush();
+    }
+
+    /**
+     * Passes the items collected so far to the function, setting the
+     * array's length to their number.
+     */
+    void flush() {
+        if (count == 0) {
+            return;
+        }
+        batch.put("length", batch, Integer.valueOf(count));
+        func.call(cx, scope, thisObj, params);
+        count = 0;
+    }
+}
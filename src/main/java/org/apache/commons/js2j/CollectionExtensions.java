@@ -18,17 +18,25 @@ package org.apache.commons.js2j;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptRuntime;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
 
 /**
  * Adds various function extensions to java.util.List implementations.
  *
  * @targetClass java.util.Collection
  */
+@ExtensionClass
 public class CollectionExtensions {
 
     /**
@@ -40,23 +48,51 @@ public class CollectionExtensions {
      *  @funcReturn void
      *  @example list.each(function(item) { print(item) })
      */
-    public static ExtensionFunction each(final Collection col) {
-        return new ExtensionFunction() {    
-            /** Auto-generated serialization id */
-            private static final long serialVersionUID = -6303362292926144547L;
+    public static ExtensionFunction each(Collection col) {
+        return EACH;
+    }
 
-            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
-                Function func = (Function)args[0];
-                Object[] param = new Object[1];
-                
-                for (Iterator i = col.iterator(); i.hasNext(); ) {
-                    param[0] = i.next();
-                    func.call(cx, scope, thisObj, param);
-                }
-                return null;
+    private static final ExtensionFunction EACH = new StatelessExtensionFunction() {
+        /** Auto-generated serialization id */
+        private static final long serialVersionUID = -6303362292926144547L;
+
+        public Object execute(Context cx, Scriptable scope, Scriptable thisObj, Object target, java.lang.Object[] args) {
+            Collection col = (Collection)target;
+            Function func = (Function)args[0];
+            Object[] param = new Object[1];
+            
+            for (Iterator i = col.iterator(); i.hasNext(); ) {
+                param[0] = i.next();
+                func.call(cx, scope, thisObj, param);
             }
-        };
+            return null;
+        }
+    };
+ 
+    /**
+     *  Iterates through the collection in batches, calling the passed
+     *  function with an array of up to size elements at a time.  The same
+     *  array is reused for every batch, so copy anything that should be
+     *  kept after the function returns.
+     *
+     *  @funcParams int size, Function func
+     *  @funcReturn void
+     *  @example list.eachBatch(1000, function(items) { for (var x = 0; x < items.length; x++) total += items[x] })
+     */
+    public static ExtensionFunction eachBatch(Collection col) {
+        return EACH_BATCH;
     }
+
+    private static final ExtensionFunction EACH_BATCH = new StatelessExtensionFunction() {
+        /** Auto-generated serialization id */
+        private static final long serialVersionUID = 7309258611839460158L;
+
+        public Object execute(Context cx, Scriptable scope, Scriptable thisObj, Object target, java.lang.Object[] args) {
+            Collection col = (Collection)target;
+            BatchBuffer.fromArgs(cx, scope, thisObj, args).addAll(col.iterator());
+            return null;
+        }
+    };
  
     /**
      *  Finds the first item selected by the passed function.  The function
@@ -67,58 +103,498 @@ public class CollectionExtensions {
      *  @funcReturn Object
      *  @example item = list.find(function(item) { return item.matches(/foo[0-9]/) })
      */
-    public static ExtensionFunction find(final Collection col) {
+    public static ExtensionFunction find(Collection col) {
+        return FIND;
+    }
+
+    private static final ExtensionFunction FIND = new StatelessExtensionFunction() {
+        /** Auto-generated serialization id */
+        private static final long serialVersionUID = 3231163709725438572L;
+
+        public Object execute(Context cx, Scriptable scope, Scriptable thisObj, Object target, java.lang.Object[] args) {
+            Collection col = (Collection)target;
+            Function func = (Function)args[0];
+            Object[] param = new Object[1];
+            Object match = null;
+            for (Iterator i = col.iterator(); i.hasNext(); ) {
+                param[0] = i.next();
+                match = func.call(cx, scope, thisObj, param);
+                if (match != null) {
+                    return match;
+                }
+            }
+            return null;
+        }
+    };
+    
+    /**
+     *  Finds all items selected by the passed function.  The function
+     *  will receive the item and should return true or false for the 
+     *  result.  A list of all matches will be returned.
+     *
+     *  @funcParams Function func
+     *  @funcReturn java.util.List
+     *  @example matches = list.findAll(function(item) { return item.matches(/foo[0-9]/) })
+     */
+    public static ExtensionFunction findAll(Collection col) {
+        return FIND_ALL;
+    }
+
+    private static final ExtensionFunction FIND_ALL = new StatelessExtensionFunction() {
+        /** Auto-generated serialization id */
+        private static final long serialVersionUID = 8857541526499998517L;
+
+        public Object execute(Context cx, Scriptable scope, Scriptable thisObj, Object target, java.lang.Object[] args) {
+            Collection col = (Collection)target;
+            Function func = (Function)args[0];
+            Object[] param = new Object[1];
+            ArrayList found = new ArrayList();
+            Object match = null;
+            for (Iterator i = col.iterator(); i.hasNext(); ) {
+                param[0] = i.next();
+                match = func.call(cx, scope, thisObj, param);
+                if (match != null) {
+                    found.add(match);
+                }
+            }
+            return found;
+        }
+    };
+    
+    /**
+     *  Calls the passed function with each element of the collection,
+     *  spreading the calls over the cores of the machine.  The calls run
+     *  in no particular order and at the same time, so the function should
+     *  not change variables shared between calls.
+     *
+     *  @funcParams Function func
+     *  @funcReturn void
+     *  @example list.parallelEach(function(file) { file.process() })
+     */
+    public static ExtensionFunction parallelEach(final Collection col) {
         return new ExtensionFunction() {    
             /** Auto-generated serialization id */
-            private static final long serialVersionUID = 3231163709725438572L;
+            private static final long serialVersionUID = -2781427335617446953L;
 
             public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
-                Function func = (Function)args[0];
-                Object[] param = new Object[1];
-                Object match = null;
-                for (Iterator i = col.iterator(); i.hasNext(); ) {
-                    param[0] = i.next();
-                    match = func.call(cx, scope, thisObj, param);
-                    if (match != null) {
-                        return match;
-                    }
-                }
+                ParallelCollections.run(cx, col, (Function)args[0], ParallelCollections.EACH);
                 return null;
             }
         };
     }
     
     /**
-     *  Finds all items selected by the passed function.  The function
-     *  will receive the item and should return true or false for the 
-     *  result.  A list of all matches will be returned.
+     *  Like findAll, but spreads the calls to the passed function over the
+     *  cores of the machine.  The matches are returned in the order of the
+     *  collection.
      *
      *  @funcParams Function func
      *  @funcReturn java.util.List
-     *  @example matches = list.findAll(function(item) { return item.matches(/foo[0-9]/) })
+     *  @example matches = list.parallelFindAll(function(item) { return item.matches(/foo[0-9]/) })
+     */
+    public static ExtensionFunction parallelFindAll(final Collection col) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 5136728520392519340L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return ParallelCollections.run(cx, col, (Function)args[0], ParallelCollections.FIND_ALL);
+            }
+        };
+    }
+    
+    /**
+     *  Returns a list of the results of calling the passed function with
+     *  each element, spreading the calls over the cores of the machine.
+     *  The results are in the order of the collection.
+     *
+     *  @funcParams Function func
+     *  @funcReturn java.util.List
+     *  @example sizes = list.parallelMap(function(file) { return file.length() })
+     */
+    public static ExtensionFunction parallelMap(final Collection col) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -4411263858209075412L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return ParallelCollections.run(cx, col, (Function)args[0], ParallelCollections.MAP);
+            }
+        };
+    }
+    
+    /**
+     *  Returns the k largest of the collection, largest first, without sorting
+     *  everything: only k items are kept while going through them.  Items are
+     *  ordered by the optional function, which is either a comparator taking
+     *  two items or a key function taking one, or else by their natural order.
+     *
+     *  @funcParams int k, [Function order]
+     *  @funcReturn java.util.List
+     *  @example biggest = list.topK(10, function(file) { return file.length() })
+     */
+    public static ExtensionFunction topK(final Collection col) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -2449619144914300734L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                TopKSelector selector = TopKSelector.fromArgs(cx, args, 0, true);
+                selector.offerAll(col.iterator());
+                return selector.getResult();
+            }
+        };
+    }
+    
+    /**
+     *  Returns the k smallest of the collection, smallest first, without sorting
+     *  everything.  Takes the same optional comparator or key function as
+     *  topK.
+     *
+     *  @funcParams int k, [Function order]
+     *  @funcReturn java.util.List
+     *  @example first = list.bottomK(3)
+     */
+    public static ExtensionFunction bottomK(final Collection col) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -6824565150569512772L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                TopKSelector selector = TopKSelector.fromArgs(cx, args, 0, false);
+                selector.offerAll(col.iterator());
+                return selector.getResult();
+            }
+        };
+    }
+    
+    /**
+     *  Returns the item that would be at index n if the collection were
+     *  sorted, or null if there are not enough items.  Only n + 1 items are
+     *  kept while going through them.  Takes the same optional comparator or
+     *  key function as topK.
+     *
+     *  @funcParams int n, [Function order]
+     *  @funcReturn Object
+     *  @example median = list.nthElement(list.size() / 2)
+     */
+    public static ExtensionFunction nthElement(final Collection col) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 3341942498655715891L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                TopKSelector selector = TopKSelector.fromArgs(cx, args, 1, false);
+                selector.offerAll(col.iterator());
+                return selector.getLast();
+            }
+        };
+    }
+    
+    /**
+     *  Starts a lazy pipeline over the collection.  Operations like map,
+     *  filter, take, skip and flatMap are fused into a single pass that
+     *  only runs when a result is asked for with reduce, first, count or
+     *  toList, without building intermediate lists.
+     *
+     *  @funcParams 
+     *  @funcReturn org.apache.commons.js2j.Pipeline
+     *  @example names = list.lazy().filter(function(item) { return item.exists() }).map(function(item) { return item.name }).take(10).toList()
      */
-    public static ExtensionFunction findAll(final Collection col) {
+    public static ExtensionFunction lazy(final Collection col) {
         return new ExtensionFunction() {    
             /** Auto-generated serialization id */
-            private static final long serialVersionUID = 8857541526499998517L;
+            private static final long serialVersionUID = 2406184389522346283L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return new Pipeline(col, thisObj);
+            }
+        };
+    }
+    
+    /**
+     *  Adds up the numbers in the collection, or the numbers returned by
+     *  the optional key function for each item.  Without a key function
+     *  the sum is worked out in Java without calling back into the
+     *  script; integers are summed exactly, and the sum comes back as a
+     *  Long while it fits in one, so Java methods taking a long get every
+     *  digit.
+     *
+     *  @funcParams [Function key]
+     *  @funcReturn Number
+     *  @example total = sizes.sum(); bytes = files.sum(function(file) { return file.length() })
+     */
+    public static ExtensionFunction sum(final Collection col) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -6284730326319416137L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return NumericAggregator.aggregate(cx, col, keyFunction(args, 0)).getSum();
+            }
+        };
+    }
+    
+    /**
+     *  Finds the smallest of the numbers in the collection, or of the
+     *  numbers returned by the optional key function.  Returns null for an
+     *  empty collection.
+     *
+     *  @funcParams [Function key]
+     *  @funcReturn Number
+     *  @example smallest = sizes.min()
+     */
+    public static ExtensionFunction min(final Collection col) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -4172279052942320678L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return NumericAggregator.aggregate(cx, col, keyFunction(args, 0)).getMin();
+            }
+        };
+    }
+    
+    /**
+     *  Finds the largest of the numbers in the collection, or of the
+     *  numbers returned by the optional key function.  Returns null for an
+     *  empty collection.
+     *
+     *  @funcParams [Function key]
+     *  @funcReturn Number
+     *  @example largest = files.max(function(file) { return file.length() })
+     */
+    public static ExtensionFunction max(final Collection col) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 7460152720188142793L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return NumericAggregator.aggregate(cx, col, keyFunction(args, 0)).getMax();
+            }
+        };
+    }
+    
+    /**
+     *  Averages the numbers in the collection, or the numbers returned by
+     *  the optional key function.  Returns NaN for an empty collection.
+     *
+     *  @funcParams [Function key]
+     *  @funcReturn Number
+     *  @example average = sizes.avg()
+     */
+    public static ExtensionFunction avg(final Collection col) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -1034827747061699264L;
 
             public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
-                Function func = (Function)args[0];
+                return Double.valueOf(NumericAggregator.aggregate(cx, col, keyFunction(args, 0)).getMean());
+            }
+        };
+    }
+    
+    /**
+     *  Works out count, sum, min, max, mean and (population) variance of
+     *  the numbers in the collection, or of the numbers returned by the
+     *  optional key function, in a single pass.
+     *
+     *  @funcParams [Function key]
+     *  @funcReturn Object
+     *  @example s = sizes.stats(); print(s.mean + ' +/- ' + Math.sqrt(s.variance))
+     */
+    public static ExtensionFunction stats(final Collection col) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -1249466040455927431L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                NumericAggregator agg = NumericAggregator.aggregate(cx, col, keyFunction(args, 0));
+                Scriptable stats = cx.newObject(ScriptableObject.getTopLevelScope(scope));
+                ScriptableObject.putProperty(stats, "count", Double.valueOf(agg.getCount()));
+                ScriptableObject.putProperty(stats, "sum", agg.getSum());
+                ScriptableObject.putProperty(stats, "min", agg.getMin());
+                ScriptableObject.putProperty(stats, "max", agg.getMax());
+                ScriptableObject.putProperty(stats, "mean", Double.valueOf(agg.getMean()));
+                ScriptableObject.putProperty(stats, "variance", Double.valueOf(agg.getVariance()));
+                return stats;
+            }
+        };
+    }
+    
+    /**
+     *  Counts how many of the numbers in the collection, or of the numbers
+     *  returned by the optional key function, fall in each of the given
+     *  number of equal-width buckets between the smallest and largest.
+     *  Returns an object with min, max, bucketWidth and a counts array.
+     *
+     *  @funcParams int buckets, [Function key]
+     *  @funcReturn Object
+     *  @example h = sizes.histogram(10); print(h.counts[0] + ' under ' + (h.min + h.bucketWidth))
+     */
+    public static ExtensionFunction histogram(final Collection col) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -614713923747278578L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                int buckets = ((Number)args[0]).intValue();
+                if (buckets <= 0) {
+                    throw new IllegalArgumentException("Number of buckets must be positive: " + buckets);
+                }
+                double[] values = NumericAggregator.toDoubles(cx, col, keyFunction(args, 1));
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int x = 0; x < values.length; x++) {
+                    min = Math.min(min, values[x]);
+                    max = Math.max(max, values[x]);
+                }
+                double width = (values.length == 0 ? 0 : (max - min) / buckets);
+                long[] counts = new long[buckets];
+                for (int x = 0; x < values.length; x++) {
+                    int bucket = (width == 0 ? 0 : (int)((values[x] - min) / width));
+                    counts[Math.min(bucket, buckets - 1)]++;
+                }
+                Object[] countValues = new Object[buckets];
+                for (int x = 0; x < buckets; x++) {
+                    countValues[x] = Double.valueOf(counts[x]);
+                }
+                scope = ScriptableObject.getTopLevelScope(scope);
+                Scriptable histogram = cx.newObject(scope);
+                ScriptableObject.putProperty(histogram, "min", (values.length == 0 ? null : Double.valueOf(min)));
+                ScriptableObject.putProperty(histogram, "max", (values.length == 0 ? null : Double.valueOf(max)));
+                ScriptableObject.putProperty(histogram, "bucketWidth", Double.valueOf(width));
+                ScriptableObject.putProperty(histogram, "counts", cx.newArray(scope, countValues));
+                return histogram;
+            }
+        };
+    }
+    
+    /**
+     *  Builds a map from the key the passed function returns for each
+     *  element to the element, in a single pass, so repeated lookups don't
+     *  have to search the collection.  Number keys are stored in their
+     *  string form, so <code>index[42]</code> and <code>index['42']</code>
+     *  both work from a script, where property names are strings anyway,
+     *  but Java code handed the map has to look them up as strings too:
+     *  <code>map.get(42)</code> finds nothing.  When two elements share a
+     *  key the last one wins.
+     *
+     *  @funcParams Function key
+     *  @funcReturn java.util.Map
+     *  @example byName = list.indexBy(function(file) { return file.name }); file = byName['foo.txt']
+     */
+    public static ExtensionFunction indexBy(final Collection col) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -4221422742652454332L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return buildMap(cx, scope, thisObj, col, (Function)args[0], null);
+            }
+        };
+    }
+    
+    /**
+     *  Groups the elements by the key the passed function returns for each
+     *  of them, giving a map from each key to a list of its elements in the
+     *  order of the collection.  Number keys are stored in their string
+     *  form, as with indexBy, so Java code must look them up as strings.
+     *
+     *  @funcParams Function key
+     *  @funcReturn java.util.Map
+     *  @example byType = list.groupBy(function(file) { return file.isDirectory() ? 'dirs' : 'files' }); print(byType.dirs.length)
+     */
+    public static ExtensionFunction groupBy(final Collection col) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -848592877704728416L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                Function key = (Function)args[0];
                 Object[] param = new Object[1];
-                ArrayList found = new ArrayList();
-                Object match = null;
+                Map groups = new HashMap();
                 for (Iterator i = col.iterator(); i.hasNext(); ) {
                     param[0] = i.next();
-                    match = func.call(cx, scope, thisObj, param);
-                    if (match != null) {
-                        found.add(match);
+                    Object k = toMapKey(key.call(cx, scope, thisObj, param));
+                    List group = (List)groups.get(k);
+                    if (group == null) {
+                        group = new ArrayList();
+                        groups.put(k, group);
                     }
+                    group.add(param[0]);
                 }
-                return found;
+                return groups;
             }
         };
     }
     
+    /**
+     *  Builds a map from the key the first function returns for each
+     *  element to the value the second function returns for it, in a
+     *  single pass.  Without a value function the element itself is the
+     *  value.  Number keys are stored in their string form.
+     *
+     *  @funcParams Function key, [Function value]
+     *  @funcReturn java.util.Map
+     *  @example sizes = list.toMap(function(file) { return file.name }, function(file) { return file.length() })
+     */
+    public static ExtensionFunction toMap(final Collection col) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -2430833339618500624L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return buildMap(cx, scope, thisObj, col, (Function)args[0], keyFunction(args, 1));
+            }
+        };
+    }
+    
+    private static Map buildMap(Context cx, Scriptable scope, Scriptable thisObj, Collection col, Function key, Function value) {
+        Object[] param = new Object[1];
+        Map map = new HashMap((int)(col.size() / 0.75f) + 1);
+        for (Iterator i = col.iterator(); i.hasNext(); ) {
+            Object item = i.next();
+            param[0] = item;
+            Object k = toMapKey(key.call(cx, scope, thisObj, param));
+            if (value != null) {
+                param[0] = item;
+                item = value.call(cx, scope, thisObj, param);
+                if (item instanceof Wrapper) {
+                    item = ((Wrapper)item).unwrap();
+                } else if (item instanceof Undefined) {
+                    item = null;
+                }
+            }
+            map.put(k, item);
+        }
+        return map;
+    }
+    
+    /**
+     *  Converts a key returned by a script function to the key stored in
+     *  the map: numbers, strings and booleans become their script string
+     *  form, so they can be looked up as properties; other objects are
+     *  kept as they are.
+     */
+    private static Object toMapKey(Object key) {
+        if (key instanceof Wrapper) {
+            key = ((Wrapper)key).unwrap();
+        }
+        if (key == null || key instanceof Undefined) {
+            return null;
+        } else if (key instanceof String) {
+            return key;
+        } else if (key instanceof Number || key instanceof Boolean || key instanceof CharSequence) {
+            return ScriptRuntime.toString(key);
+        }
+        return key;
+    }
+    
+    private static Function keyFunction(Object[] args, int index) {
+        return (args.length > index && args[index] instanceof Function ? (Function)args[index] : null);
+    }
+    
     /**
      *  Provides the current size of the collection.  Alternative to
      *  the size() method to be more consistent with Javascript
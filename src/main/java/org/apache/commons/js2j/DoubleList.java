@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.util.Arrays;
+
+import org.mozilla.javascript.ScriptRuntime;
+
+/**
+ * A list of double values backed by a double[] array.
+ */
+public class DoubleList extends PrimitiveList {
+
+    private static final long serialVersionUID = 1L;
+
+    private double[] data;
+
+    public DoubleList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DoubleList(int capacity) {
+        data = new double[capacity];
+    }
+
+    public DoubleList(double[] values) {
+        data = (double[])values.clone();
+        size = values.length;
+    }
+
+    public double getDouble(int index) {
+        checkIndex(index);
+        return data[index];
+    }
+
+    /**
+     * @return the previous value at the index
+     */
+    public double setDouble(int index, double value) {
+        checkIndex(index);
+        double old = data[index];
+        data[index] = value;
+        return old;
+    }
+
+    public void addDouble(double value) {
+        if (size == data.length) {
+            ensureCapacity(size + 1);
+        }
+        data[size++] = value;
+        modCount++;
+    }
+
+    /**
+     * @return a copy of the values
+     */
+    public double[] toDoubleArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public Object get(int index) {
+        return Double.valueOf(getDouble(index));
+    }
+
+    Object getArray() {
+        return data;
+    }
+
+    void setArray(Object array) {
+        data = (double[])array;
+    }
+
+    Object getValue(int index) {
+        return toValue(data[index]);
+    }
+
+    void store(int index, Object value) {
+        data[index] = ScriptRuntime.toNumber(value);
+    }
+
+    void aggregate(NumericAggregator agg) {
+        for (int x = 0; x < size; x++) {
+            agg.add(data[x]);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+/**
+ * Limits on a single script execution, enforced by the
+ * {@link SugarContextFactory} through Rhino's instruction observer.  A script
+ * over its instruction or wall-clock budget is stopped with an
+ * {@link ExecutionBudgetExceededError}.  When a time slice is set, a script
+ * that runs longer than the slice gives the caller a chance to run other
+ * work before it continues, see {@link SugarRuntime#call(SugarRuntime.ScopeAction, ExecutionBudget, Runnable)}.
+ * <p>
+ * Limits are only checked every {@link #getCheckInterval()} instructions, so
+ * time spent blocked in Java code, such as reading a file, is noticed once
+ * the script runs again.  A limit of zero means no limit.
+ */
+public class ExecutionBudget {
+
+    /** Instructions run between budget checks by default */
+    public static final int DEFAULT_CHECK_INTERVAL = 10000;
+
+    private final long maxInstructions;
+    private final long maxMillis;
+    private final long sliceMillis;
+    private final int checkInterval;
+
+    /**
+     * @param maxInstructions the instructions a script may run
+     * @param maxMillis the milliseconds a script may run for
+     */
+    public ExecutionBudget(long maxInstructions, long maxMillis) {
+        this(maxInstructions, maxMillis, 0, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * @param maxInstructions the instructions a script may run
+     * @param maxMillis the milliseconds a script may run for
+     * @param sliceMillis the milliseconds a script runs before yielding
+     * @param checkInterval the instructions run between budget checks
+     */
+    public ExecutionBudget(long maxInstructions, long maxMillis, long sliceMillis, int checkInterval) {
+        if (maxInstructions < 0 || maxMillis < 0 || sliceMillis < 0) {
+            throw new IllegalArgumentException("Budget limits must not be negative");
+        }
+        if (checkInterval <= 0) {
+            throw new IllegalArgumentException("Check interval must be positive: " + checkInterval);
+        }
+        this.maxInstructions = maxInstructions;
+        this.maxMillis = maxMillis;
+        this.sliceMillis = sliceMillis;
+        this.checkInterval = checkInterval;
+    }
+
+    public long getMaxInstructions() {
+        return maxInstructions;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public long getSliceMillis() {
+        return sliceMillis;
+    }
+
+    public int getCheckInterval() {
+        return checkInterval;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+/**
+ * Thrown when a script runs past its {@link ExecutionBudget}.  This is an
+ * Error rather than an exception so script try/catch blocks can't swallow
+ * it and keep running.
+ */
+public class ExecutionBudgetExceededError extends Error {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long instructions;
+    private final long elapsedMillis;
+
+    public ExecutionBudgetExceededError(String message, long instructions, long elapsedMillis) {
+        super(message);
+        this.instructions = instructions;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return the instructions the script had run when it was stopped
+     */
+    public long getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return how long the script had been running when it was stopped
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
@@ -34,39 +34,54 @@ public abstract class ExtensionFunction extends ScriptableObject implements Func
         
     public Object call(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
         try {
-            // Unwrap args and convert to Java types as appropriate
-            for (int x=0; x<args.length; x++) {
-                if (args[x] instanceof NativeJavaObject) {
-                    args[x] = ((NativeJavaObject)args[x]).unwrap();
-                } else if (args[x] instanceof IdScriptableObject) {
-                    if ("String".equals(((IdScriptableObject)args[x]).getClassName())) {
-                        args[x] = args[x].toString();
-                    }
-                }
-            }
+            unwrapArgs(args);
             
             // Execute the function call
             Object o = execute(cx, scope, thisObj, args);
             
             // Wrap the result as necessary
-            if (o instanceof Scriptable) {
-                return o;
-            } else if (o == target) {
-                return wrapper;
-            } else {
-                // Need to wrap the object before we return it.
-                scope = ScriptableObject.getTopLevelScope(scope);
-                Class type = Object.class;
-                if (o != null) {
-                    type = o.getClass();
-                } 
-                return cx.getWrapFactory().wrap(cx, scope, o, type);
-            }
+            return wrapResult(cx, scope, o);
         } catch (Exception ex) {
             throw Context.throwAsScriptRuntimeEx(ex);
         }
     }
     
+    /**
+     *  Unwraps the arguments and converts them to Java types as appropriate.
+     */
+    protected static void unwrapArgs(Object[] args) {
+        for (int x=0; x<args.length; x++) {
+            if (args[x] instanceof NativeJavaObject) {
+                args[x] = ((NativeJavaObject)args[x]).unwrap();
+            } else if (args[x] instanceof IdScriptableObject) {
+                if ("String".equals(((IdScriptableObject)args[x]).getClassName())) {
+                    args[x] = args[x].toString();
+                }
+            }
+        }
+    }
+    
+    /**
+     *  Converts the result of {@link #execute} to the value returned to
+     *  the script.  Java objects are wrapped, the target object is
+     *  returned as its existing wrapper.
+     */
+    protected Object wrapResult(Context cx, Scriptable scope, Object o) {
+        if (o instanceof Scriptable) {
+            return o;
+        } else if (o == target) {
+            return wrapper;
+        } else {
+            // Need to wrap the object before we return it.
+            scope = ScriptableObject.getTopLevelScope(scope);
+            Class type = Object.class;
+            if (o != null) {
+                type = o.getClass();
+            } 
+            return cx.getWrapFactory().wrap(cx, scope, o, type);
+        }
+    }
+    
     public abstract Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) throws Exception;
      
     public Scriptable construct(Context cx, Scriptable scope, java.lang.Object[] args) {
@@ -0,0 +1,125 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+import org.mozilla.javascript.Scriptable;
+
+/**
+ *  Calls a registered extension method.  Each method is bound once, when it
+ *  is registered, into a method handle of the fixed shape
+ *  <tt>(Object target, Scriptable scope)Object</tt> so the JIT can inline
+ *  the call.  Methods that can't be looked up publicly fall back to
+ *  reflection.
+ */
+public abstract class ExtensionInvoker {
+
+    private static final MethodType INVOKER_TYPE =
+            MethodType.methodType(Object.class, Object.class, Scriptable.class);
+
+    private final Method method;
+    private final Class returnType;
+
+    protected ExtensionInvoker(Method method) {
+        this.method = method;
+        this.returnType = method.getReturnType();
+    }
+
+    /**
+     *  Creates an invoker for either a function factory, taking only the
+     *  target, or a property extension, taking the target and scope.
+     */
+    public static ExtensionInvoker create(Method method) {
+        try {
+            return new MethodHandleInvoker(method);
+        } catch (IllegalAccessException ex) {
+            return new ReflectiveInvoker(method);
+        }
+    }
+
+    /**
+     *  Invokes the extension.  The scope is ignored for function factories.
+     */
+    public abstract Object invoke(Object target, Scriptable scope) throws Exception;
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Class getReturnType() {
+        return returnType;
+    }
+
+    public boolean isProperty() {
+        return method.getParameterTypes().length == 2;
+    }
+
+    static class MethodHandleInvoker extends ExtensionInvoker {
+        private final MethodHandle handle;
+
+        MethodHandleInvoker(Method method) throws IllegalAccessException {
+            super(method);
+            MethodHandle mh = MethodHandles.publicLookup().unreflect(method);
+            if (!isProperty()) {
+                mh = MethodHandles.dropArguments(mh, 1, Scriptable.class);
+            }
+            handle = mh.asType(INVOKER_TYPE);
+        }
+
+        public Object invoke(Object target, Scriptable scope) throws Exception {
+            try {
+                return (Object)handle.invokeExact(target, scope);
+            } catch (Exception ex) {
+                throw ex;
+            } catch (Error err) {
+                throw err;
+            } catch (Throwable t) {
+                throw new UndeclaredThrowableException(t);
+            }
+        }
+    }
+
+    static class ReflectiveInvoker extends ExtensionInvoker {
+        private final boolean property;
+
+        ReflectiveInvoker(Method method) {
+            super(method);
+            this.property = isProperty();
+        }
+
+        public Object invoke(Object target, Scriptable scope) throws Exception {
+            try {
+                if (property) {
+                    return getMethod().invoke(null, target, scope);
+                }
+                return getMethod().invoke(null, target);
+            } catch (InvocationTargetException ex) {
+                Throwable cause = ex.getTargetException();
+                if (cause instanceof Exception) {
+                    throw (Exception)cause;
+                }
+                throw ex;
+            }
+        }
+    }
+}
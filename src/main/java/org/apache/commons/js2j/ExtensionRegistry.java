@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Registry of extension functions and the per-class dispatch tables built
+ * from them.  The default registry is loaded once per class loader from the
+ * extension index written at build time by
+ * {@link org.apache.commons.js2j.apt.ExtensionIndexProcessor}, and is shared
+ * by every {@link SugarWrapFactory} using the default extensions.
+ */
+public class ExtensionRegistry {
+
+    /** Classpath location of the build-time extension index */
+    public static final String INDEX_RESOURCE = "META-INF/js2j/extensions.idx";
+
+    private static final Class[] DEFAULT_EXTENSIONS = new Class[] {
+        CollectionExtensions.class,
+        ListExtensions.class,
+        MapExtensions.class,
+        PrimitiveArrayExtensions.class,
+        FileExtensions.class,
+        PropertiesExtensions.class,
+        InputStreamExtensions.class
+    };
+
+    private final List<ExtensionEntry> entries;
+
+    /**
+     * Per-class dispatch tables.  Each table is computed once, the first time
+     * an instance of that class is wrapped, and is shared by every wrapper of
+     * the class.  ClassValue keeps the tables from pinning class loaders.
+     */
+    private final ClassValue<Map<String, Object>> dispatchTables = new ClassValue<Map<String, Object>>() {
+        protected Map<String, Object> computeValue(Class<?> type) {
+            dispatchMisses.incrementAndGet();
+            return buildExtensionFunctions(type);
+        }
+    };
+
+    private final AtomicLong dispatchLookups = new AtomicLong();
+    private final AtomicLong dispatchMisses = new AtomicLong();
+
+    /**
+     * Creates a registry holding the extensions of the parent registry, if
+     * any, followed by the extensions found by reflecting on the passed
+     * classes.
+     */
+    public ExtensionRegistry(ExtensionRegistry parent, List<Class> extensionClasses) {
+        List<ExtensionEntry> list = new ArrayList<ExtensionEntry>();
+        if (parent != null) {
+            list.addAll(parent.entries);
+        }
+        for (Class cls : extensionClasses) {
+            list.addAll(scan(cls));
+        }
+        this.entries = Collections.unmodifiableList(list);
+    }
+
+    private ExtensionRegistry(List<ExtensionEntry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return the registry of the default extensions, loaded from the
+     *         extension index
+     */
+    public static ExtensionRegistry getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Gets the immutable dispatch table of extension functions that apply to
+     * the class, keyed by function name.  Values are either shared
+     * {@link org.mozilla.javascript.Function} instances or the
+     * {@link ExtensionInvoker} of a property extension.
+     */
+    public Map<String, Object> getExtensionFunctions(Class cls) {
+        dispatchLookups.incrementAndGet();
+        return dispatchTables.get(cls);
+    }
+
+    /**
+     * @return the number of dispatch table lookups answered from the
+     *         per-class cache
+     */
+    public long getDispatchCacheHits() {
+        return dispatchLookups.get() - dispatchMisses.get();
+    }
+
+    /**
+     * @return the number of dispatch tables that had to be built, which is
+     *         roughly one per distinct wrapped class
+     */
+    public long getDispatchCacheMisses() {
+        return dispatchMisses.get();
+    }
+
+    private Map<String, Object> buildExtensionFunctions(Class cls) {
+        Map<String, ExtensionEntry> matches = null;
+        for (ExtensionEntry entry : entries) {
+            if (entry.clazz.isAssignableFrom(cls)) {
+                if (matches == null) {
+                    matches = new HashMap<String, ExtensionEntry>();
+                }
+                // A function on a more specific type wins, otherwise the last registered
+                ExtensionEntry existing = matches.get(entry.name);
+                if (existing == null || existing.clazz == entry.clazz
+                        || !entry.clazz.isAssignableFrom(existing.clazz)) {
+                    matches.put(entry.name, entry);
+                }
+            }
+        }
+        if (matches == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> map = new HashMap<String, Object>();
+        for (ExtensionEntry entry : matches.values()) {
+            map.put(entry.name, entry.function);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    static List<ExtensionEntry> scan(Class holder) {
+        List<ExtensionEntry> registry = new ArrayList<ExtensionEntry>();
+        for (Method method : holder.getDeclaredMethods()) {
+            int modifier = method.getModifiers();
+            if (Modifier.isStatic(modifier) && Modifier.isPublic(modifier)) {
+                registry.add(new ExtensionEntry(method));
+            }
+        }
+        return registry;
+    }
+
+    static ExtensionRegistry loadDefault(ClassLoader loader) {
+        List<ExtensionEntry> list = new ArrayList<ExtensionEntry>();
+        try {
+            Enumeration<URL> indexes = loader.getResources(INDEX_RESOURCE);
+            while (indexes.hasMoreElements()) {
+                list.addAll(readIndex(indexes.nextElement(), loader));
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to read extension index", ex);
+        }
+        if (list.isEmpty()) {
+            // Built without the index processor, e.g. in an IDE
+            for (Class cls : DEFAULT_EXTENSIONS) {
+                list.addAll(scan(cls));
+            }
+        }
+        return new ExtensionRegistry(list);
+    }
+
+    private static List<ExtensionEntry> readIndex(URL url, ClassLoader loader) throws IOException {
+        List<ExtensionEntry> list = new ArrayList<ExtensionEntry>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), "UTF-8"));
+        try {
+            String line = null;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 4) {
+                    throw new IOException("Invalid extension index entry in "+url+": "+line);
+                }
+                Class target = loadClass(fields[1], loader);
+                Class holder = loadClass(fields[3], loader);
+                Class[] params = ("property".equals(fields[0])
+                        ? new Class[] {target, Scriptable.class}
+                        : new Class[] {target});
+                try {
+                    list.add(new ExtensionEntry(holder.getMethod(fields[2], params)));
+                } catch (NoSuchMethodException ex) {
+                    throw new IOException("Stale extension index entry in "+url+": "+line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return list;
+    }
+
+    private static Class loadClass(String name, ClassLoader loader) throws IOException {
+        try {
+            return Class.forName(name, false, loader);
+        } catch (ClassNotFoundException ex) {
+            throw new IOException("Unknown class in extension index: "+name);
+        }
+    }
+
+    private static class DefaultHolder {
+        static final ExtensionRegistry INSTANCE = loadDefault(ExtensionRegistry.class.getClassLoader());
+    }
+
+    static class ExtensionEntry {
+        public Class clazz;
+        public String name;
+        public Object function;
+
+        public ExtensionEntry(Method method) {
+            this.clazz = method.getParameterTypes()[0];
+            this.name = method.getName();
+            ExtensionInvoker invoker = ExtensionInvoker.create(method);
+            if (invoker.isProperty()) {
+                this.function = invoker;
+            } else {
+                // One shared, stateless function for every wrapper
+                this.function = new FactoryExtensionFunction(name, clazz, invoker);
+            }
+        }
+    }
+}
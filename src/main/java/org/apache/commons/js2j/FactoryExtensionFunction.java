@@ -0,0 +1,111 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ *  Stateless function shared by every wrapper of a class.  The receiver is
+ *  taken from <tt>thisObj</tt> when the function is called, so reading the
+ *  function off a wrapped object doesn't create anything.  Extension classes
+ *  written as factories, i.e. <tt>public static ExtensionFunction name(Target t)</tt>,
+ *  are adapted by creating their per-target function on the first call on a
+ *  wrapper, which the wrapper then keeps.  A factory that returns a
+ *  {@link StatelessExtensionFunction} is called once, and its function is
+ *  then used for every wrapper.
+ */
+public class FactoryExtensionFunction extends ScriptableObject implements Function {
+
+    /** Auto-generated serialization id */
+    private static final long serialVersionUID = 2748109413275529610L;
+
+    private final String name;
+    private final Class targetType;
+    private final ExtensionInvoker factory;
+    private transient volatile StatelessExtensionFunction stateless;
+
+    public FactoryExtensionFunction(String name, Class targetType, ExtensionInvoker factory) {
+        this.name = name;
+        this.targetType = targetType;
+        this.factory = factory;
+        sealObject();
+    }
+
+    /**
+     * Calls the function created for the receiver.  Wrappers keep the
+     * function once created, so calling an extension repeatedly on the same
+     * wrapper doesn't allocate.  Extension functions hold no state besides
+     * their target, so a bound function can be called by several threads.
+     */
+    public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+        StatelessExtensionFunction shared = stateless;
+        if (shared != null) {
+            getTarget(thisObj);
+            return shared.call(cx, scope, thisObj, args);
+        }
+        JavaObjectWrapper owner = (thisObj instanceof JavaObjectWrapper ? (JavaObjectWrapper)thisObj : null);
+        ExtensionFunction func = (owner == null ? null : owner.getBoundFunction(this));
+        if (func == null) {
+            Object target = getTarget(thisObj);
+            func = createFunction(target);
+            if (func instanceof StatelessExtensionFunction) {
+                stateless = (StatelessExtensionFunction)func;
+                return func.call(cx, scope, thisObj, args);
+            }
+            func.setTarget(target);
+            func.setWrapper(thisObj);
+            if (owner != null) {
+                owner.bindFunction(this, func);
+            }
+        }
+        return func.call(cx, scope, thisObj, args);
+    }
+
+    public Scriptable construct(Context cx, Scriptable scope, Object[] args) {
+        return null;
+    }
+
+    public String getClassName() {
+        return "Function";
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    protected Object getTarget(Scriptable thisObj) {
+        Object target = JavaObjectWrapper.extensionTargetOf(thisObj);
+        if (targetType.isInstance(target)) {
+            return target;
+        }
+        throw ScriptRuntime.typeError("Function "+name+" must be called on an instance of "+targetType.getName());
+    }
+
+    protected ExtensionFunction createFunction(Object target) {
+        try {
+            return (ExtensionFunction)factory.invoke(target, null);
+        } catch (RuntimeException ex) {
+            throw Context.throwAsScriptRuntimeEx(ex);
+        } catch (Exception ex) {
+            throw new RuntimeException("Unable to create function "+name+" on "+target, ex);
+        }
+    }
+}
@@ -21,7 +21,6 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
@@ -33,6 +32,7 @@ import org.mozilla.javascript.Scriptable;
  * Adds various functions to java.io.File
  * @targetClass java.io.File
  */
+@ExtensionClass
 public class FileExtensions {
 
 
@@ -168,6 +168,111 @@ public class FileExtensions {
         };
     }
     
+    /**
+     *  Passes the lines of the file to the provided function in batches,
+     *  as an array of up to size lines at a time.  The same array is reused
+     *  for every batch, so copy anything that should be kept after the
+     *  function returns.
+     *
+     *  @funcParams int size, Function func
+     *  @funcReturn void
+     *  @example file.eachBatch(500, function(lines) { count += lines.length })
+     */
+    public static ExtensionFunction eachBatch(final File file) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -1946637190474871273L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) 
+                    throws IOException {
+                
+                BatchBuffer buffer = BatchBuffer.fromArgs(cx, scope, thisObj, args);
+                FileReader freader = null;
+                try {
+                    freader = new FileReader(file);
+                    buffer.addLines(new BufferedReader(freader));
+                } finally {
+                    if (freader != null) {
+                        freader.close();
+                    }
+                }
+                return null;
+            }
+        };
+    }
+    
+    /**
+     *  Returns the k largest lines of the file, largest first, reading it once
+     *  and keeping only k lines in memory, so it works on files too big to
+     *  sort.  Lines are ordered by the optional function, which is either a
+     *  comparator taking two lines or a key function taking one, or else
+     *  alphabetically.
+     *
+     *  @funcParams int k, [Function order]
+     *  @funcReturn java.util.List
+     *  @example longest = file.topK(10, function(line) { return line.length })
+     */
+    public static ExtensionFunction topK(final File file) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 1396605940443448663L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) 
+                    throws IOException {
+                TopKSelector selector = TopKSelector.fromArgs(cx, args, 0, true);
+                selector.offerLines(file);
+                return selector.getResult();
+            }
+        };
+    }
+    
+    /**
+     *  Returns the k smallest lines of the file, smallest first, keeping only
+     *  k lines in memory.  Takes the same optional comparator or key function
+     *  as topK.
+     *
+     *  @funcParams int k, [Function order]
+     *  @funcReturn java.util.List
+     *  @example fastest = new File("times.log").bottomK(5, function(line) { return parseFloat(line.split(" ")[1]) })
+     */
+    public static ExtensionFunction bottomK(final File file) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 6252655497845321466L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) 
+                    throws IOException {
+                TopKSelector selector = TopKSelector.fromArgs(cx, args, 0, false);
+                selector.offerLines(file);
+                return selector.getResult();
+            }
+        };
+    }
+    
+    /**
+     *  Returns the line that would be at index n if the lines of the file were
+     *  sorted, or null if the file has n lines or fewer.  Only n + 1 lines are
+     *  kept while reading it.  Takes the same optional comparator or key
+     *  function as topK.
+     *
+     *  @funcParams int n, [Function order]
+     *  @funcReturn String
+     *  @example third = file.nthElement(2, function(line) { return line.toLowerCase() })
+     */
+    public static ExtensionFunction nthElement(final File file) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 2077532106984779062L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) 
+                    throws IOException {
+                TopKSelector selector = TopKSelector.fromArgs(cx, args, 1, false);
+                selector.offerLines(file);
+                return selector.getLast();
+            }
+        };
+    }
+    
     /**
      *  Replaces text in a file.
      *
@@ -245,7 +350,10 @@ public class FileExtensions {
             public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) 
                     throws IOException {
                 
-                ArrayList list = new ArrayList();
+                // Lines are strings, which need no conversion, so they go
+                // straight into the script array as they are read
+                Scriptable lines = cx.newArray(scope, 0);
+                int count = 0;
                 FileReader freader = null;
                 try {
                     freader = new FileReader(file);
@@ -253,17 +361,12 @@ public class FileExtensions {
                     String line = null;
                     
                     while ((line = reader.readLine()) != null) {
-                        list.add(line);
+                        lines.put(count++, lines, line);
                     }
                 } finally {
                     freader.close();
                 }
-                
-                Object[] lines = new Object[list.size()];
-                for (int x=0; x<lines.length; x++) {
-                    lines[x] = Context.javaToJS(list.get(x), scope);
-                }
-                return cx.newArray(scope, lines);
+                return lines;
             }
         };
     }
@@ -28,6 +28,7 @@ import org.mozilla.javascript.Scriptable;
  * Adds various functions to java.io.InputStream
  * @targetClass java.io.InputStream
  */
+@ExtensionClass
 public class InputStreamExtensions {
 
 
@@ -60,4 +61,34 @@ public class InputStreamExtensions {
             }
         };
     }
+
+    /**
+     *  Reads the stream as text and passes its lines to the provided
+     *  function in batches, as an array of up to size lines at a time.  The
+     *  same array is reused for every batch.  The stream is closed when
+     *  done.
+     *
+     *  @funcParams int size, Function func
+     *  @funcReturn void
+     *  @example inStream.eachBatch(500, function(lines) { count += lines.length })
+     */
+    public static ExtensionFunction eachBatch(final InputStream in) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 4418925567263011853L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) 
+                    throws IOException {
+                
+                BatchBuffer buffer = BatchBuffer.fromArgs(cx, scope, thisObj, args);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+                try {
+                    buffer.addLines(reader);
+                } finally {
+                    reader.close();
+                }
+                return null;
+            }
+        };
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.util.Arrays;
+
+import org.mozilla.javascript.ScriptRuntime;
+
+/**
+ * A list of int values backed by a int[] array.
+ */
+public class IntList extends PrimitiveList {
+
+    private static final long serialVersionUID = 1L;
+
+    private int[] data;
+
+    public IntList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntList(int capacity) {
+        data = new int[capacity];
+    }
+
+    public IntList(int[] values) {
+        data = (int[])values.clone();
+        size = values.length;
+    }
+
+    public int getInt(int index) {
+        checkIndex(index);
+        return data[index];
+    }
+
+    /**
+     * @return the previous value at the index
+     */
+    public int setInt(int index, int value) {
+        checkIndex(index);
+        int old = data[index];
+        data[index] = value;
+        return old;
+    }
+
+    public void addInt(int value) {
+        if (size == data.length) {
+            ensureCapacity(size + 1);
+        }
+        data[size++] = value;
+        modCount++;
+    }
+
+    /**
+     * @return a copy of the values
+     */
+    public int[] toIntArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public Object get(int index) {
+        return Integer.valueOf(getInt(index));
+    }
+
+    public double getDouble(int index) {
+        return getInt(index);
+    }
+
+    Object getArray() {
+        return data;
+    }
+
+    void setArray(Object array) {
+        data = (int[])array;
+    }
+
+    Object getValue(int index) {
+        return Integer.valueOf(data[index]);
+    }
+
+    void store(int index, Object value) {
+        data[index] = ScriptRuntime.toInt32(value);
+    }
+
+    void aggregate(NumericAggregator agg) {
+        for (int x = 0; x < size; x++) {
+            agg.add((long)data[x]);
+        }
+    }
+}
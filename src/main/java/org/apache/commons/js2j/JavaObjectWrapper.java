@@ -17,8 +17,8 @@
 package org.apache.commons.js2j;
 
 import java.io.Serializable;
-import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.NativeJavaObject;
@@ -34,6 +34,7 @@ public class JavaObjectWrapper extends NativeJavaObject implements Scriptable, W
     /** Auto-generated serialization id */
     private static final long serialVersionUID = -6540242119193661910L;
     private Map functions;
+    private transient volatile Map boundFunctions;
 
     public JavaObjectWrapper() {
         super();
@@ -45,29 +46,78 @@ public class JavaObjectWrapper extends NativeJavaObject implements Scriptable, W
     }
 
     public Object get(String name, Scriptable start) {
-        Method func = (Method)functions.get(name);
-        if (func != null) {
+        Object func = functions.get(name);
+        if (func instanceof ExtensionInvoker) {
+            ExtensionInvoker prop = (ExtensionInvoker)func;
             try {
-                if (func.getParameterTypes().length == 2) {
-                    Object val = func.invoke(null, javaObject, start);
-                    Class type = func.getReturnType();
-                    start = ScriptableObject.getTopLevelScope(start);
-                    Context cx = Context.getCurrentContext();
-                    return cx.getWrapFactory().wrap(cx, start, val, type);
-                } else {
-                    ExtensionFunction f = (ExtensionFunction)func.invoke(null, javaObject);
-                    f.setTarget(javaObject);
-                    f.setWrapper(this);
-                    return f;
-                }
+                Object val = prop.invoke(getExtensionTarget(), start);
+                Class type = prop.getReturnType();
+                start = ScriptableObject.getTopLevelScope(start);
+                Context cx = Context.getCurrentContext();
+                return cx.getWrapFactory().wrap(cx, start, val, type);
             } catch (Exception ex) {
-                throw new RuntimeException("Unable to create function "+name+" on "+javaObject, ex);
+                throw new RuntimeException("Unable to get property "+name+" on "+javaObject, ex);
             }
+        } else if (func != null) {
+            // Shared function, the receiver is resolved when it is called
+            return func;
         } else {
             return super.get(name, start);
         } 
     }
     
+    /**
+     * @return the object extension functions and properties work on,
+     *         normally the wrapped object itself
+     */
+    Object getExtensionTarget() {
+        return javaObject;
+    }
+
+    /**
+     * @return the object extensions called on <tt>thisObj</tt> work on, or
+     *         null if it isn't a wrapper
+     */
+    static Object extensionTargetOf(Scriptable thisObj) {
+        if (thisObj instanceof JavaObjectWrapper) {
+            return ((JavaObjectWrapper)thisObj).getExtensionTarget();
+        }
+        return (thisObj instanceof Wrapper ? ((Wrapper)thisObj).unwrap() : null);
+    }
+
+    /**
+     * @return the function the factory created for this wrapper's object,
+     *         or null if it hasn't been called on this wrapper yet
+     */
+    ExtensionFunction getBoundFunction(Object factory) {
+        Map bound = boundFunctions;
+        return (bound == null ? null : (ExtensionFunction)bound.get(factory));
+    }
+
+    /**
+     * Remembers the function a factory created for this wrapper's object, so
+     * calling it again doesn't create another.
+     */
+    void bindFunction(Object factory, ExtensionFunction func) {
+        Map bound = boundFunctions;
+        if (bound == null) {
+            synchronized (this) {
+                if (boundFunctions == null) {
+                    boundFunctions = new ConcurrentHashMap(4);
+                }
+                bound = boundFunctions;
+            }
+        }
+        bound.put(factory, func);
+    }
+
+    /**
+     * @return true if the name is an extension function or property
+     */
+    protected boolean hasExtension(String name) {
+        return functions.containsKey(name);
+    }
+
     protected Object wrap(Object o, Scriptable start) {
         Class type = Object.class;
         if (o != null) {
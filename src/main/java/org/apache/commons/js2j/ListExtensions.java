@@ -16,18 +16,24 @@
  */
 package org.apache.commons.js2j;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
 
 /**
  * Adds various function extensions to java.util.List implementations.
  * @targetClass java.util.List
  */
+@ExtensionClass
 public class ListExtensions {
 
    
@@ -67,6 +73,47 @@ public class ListExtensions {
         };
     }
     
+     /**
+     *  Returns a thread-safe view of this list that lets any number of
+     *  threads read at the same time, only locking out readers while
+     *  something is written.  Iterating, as each does, goes over a
+     *  snapshot of the list, so it needs no extra locking.
+     *
+     *  @funcParams 
+     *  @funcReturn java.util.List
+     *  @example sharedList = list.asConcurrent()
+     */
+    public static ExtensionFunction asConcurrent(final List list) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 6181932046530729318L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return new ReadWriteLockedList(list);
+            }
+        };
+    }
+    
+     /**
+     *  Returns a copy-on-write copy of this list.  Reads never lock and
+     *  every write copies the list, which suits lists that are read far
+     *  more often than they are changed, such as shared lookup tables.
+     *
+     *  @funcParams 
+     *  @funcReturn java.util.List
+     *  @example listeners = list.asCopyOnWrite()
+     */
+    public static ExtensionFunction asCopyOnWrite(final List list) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -2396148217645630927L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return new CopyOnWriteArrayList(list);
+            }
+        };
+    }
+    
      /**
      *  Pops the last item off the list.  The last item will be returned and removed
      *  from the list.
@@ -75,76 +122,438 @@ public class ListExtensions {
      *  @funcReturn Object
      *  @example lastItem = list.pop()
      */
-    public static ExtensionFunction pop(final List list) {
+    public static ExtensionFunction pop(List list) {
+        return POP;
+    }
+
+    private static final ExtensionFunction POP = new StatelessExtensionFunction() {
+        /** Auto-generated serialization id */
+        private static final long serialVersionUID = 4058513289583883372L;
+
+        public Object execute(Context cx, Scriptable scope, Scriptable thisObj, Object target, java.lang.Object[] args) {
+            List list = (List)target;
+            Object o = null;
+            if (list.size() > 0) {
+                o = list.get(list.size() - 1);
+                list.remove(list.size() - 1);
+            }
+            return o;
+        }
+    };
+    
+     /**
+     *  Adds the items to the end of the list, returning its new length.
+     *
+     *  @funcParams Object item...
+     *  @funcReturn Number
+     *  @example length = list.push("foo", "bar")
+     */
+    public static ExtensionFunction push(List list) {
+        return PUSH;
+    }
+
+    private static final ExtensionFunction PUSH = new StatelessExtensionFunction(true) {
+        /** Auto-generated serialization id */
+        private static final long serialVersionUID = -3390468124478218575L;
+
+        public Object execute(Context cx, Scriptable scope, Scriptable thisObj, Object target, java.lang.Object[] args) {
+            List list = (List)target;
+            if (args.length == 1) {
+                list.add(item(args[0]));
+            } else if (args.length > 1) {
+                list.addAll(items(args, 0));
+            }
+            return Integer.valueOf(list.size());
+        }
+    };
+    
+     /**
+     *  Copies the items from begin up to, but not including, end into a new list.
+     *  Negative indexes count back from the end of the list and end defaults to
+     *  the length, as for script arrays.
+     *
+     *  @funcParams Number begin, [Number end]
+     *  @funcReturn java.util.List
+     *  @example lastTwo = list.slice(-2)
+     */
+    public static ExtensionFunction slice(final List list) {
         return new ExtensionFunction() {    
             /** Auto-generated serialization id */
-            private static final long serialVersionUID = 4058513289583883372L;
+            private static final long serialVersionUID = 8350967361218541174L;
 
             public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
-                Object o = null;
-                if (list.size() > 0) {
-                    o = list.get(list.size() - 1);
-                    list.remove(list.size() - 1);
+                int size = list.size();
+                int begin = index(args, 0, size, 0);
+                int end = index(args, 1, size, size);
+                return new ArrayList(list.subList(begin, Math.max(begin, end)));
+            }
+        };
+    }
+    
+     /**
+     *  Removes count items starting at start and inserts the given items in their
+     *  place, returning the removed items.  Inserted items overwrite removed ones
+     *  where they can, so the items after them are shifted at most once, and
+     *  in one block rather than one at a time.
+     *
+     *  @funcParams Number start, [Number count], [Object item...]
+     *  @funcReturn java.util.List
+     *  @example removed = list.splice(1, 2, "foo")
+     */
+    public static ExtensionFunction splice(final List list) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 1702536625474281397L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                int size = list.size();
+                int start = index(args, 0, size, 0);
+                int count = size - start;
+                if (args.length > 1) {
+                    count = Math.max(0, Math.min(count, (int)Context.toNumber(args[1])));
+                }
+                List range = list.subList(start, start + count);
+                List removed = new ArrayList(range);
+                List inserted = (args.length > 2 ? items(args, 2) : Collections.EMPTY_LIST);
+                int common = Math.min(count, inserted.size());
+                if (range instanceof RandomAccess) {
+                    for (int x = 0; x < common; x++) {
+                        range.set(x, inserted.get(x));
+                    }
+                } else {
+                    ListIterator i = range.listIterator();
+                    for (int x = 0; x < common; x++) {
+                        i.next();
+                        i.set(inserted.get(x));
+                    }
+                }
+                if (inserted.size() > common) {
+                    list.addAll(start + common, inserted.subList(common, inserted.size()));
+                } else if (count > common) {
+                    range.subList(common, count).clear();
                 }
-                return o;
+                return removed;
             }
         };
     }
     
      /**
-     *  Sorts the list according to the natural order.
+     *  Returns the index of the first item equal to the value at or after the
+     *  optional start index, or -1.  Numbers are equal when their values are,
+     *  whatever their type, so list.indexOf(1) finds an Integer 1.
      *
-     *  @funcParams 
+     *  @funcParams Object value, [Number fromIndex]
+     *  @funcReturn Number
+     *  @example pos = list.indexOf("foo")
+     */
+    public static ExtensionFunction indexOf(List list) {
+        return INDEX_OF;
+    }
+
+    private static final ExtensionFunction INDEX_OF = new StatelessExtensionFunction(true) {
+        /** Auto-generated serialization id */
+        private static final long serialVersionUID = -4938205627761843063L;
+
+        public Object execute(Context cx, Scriptable scope, Scriptable thisObj, Object target, java.lang.Object[] args) {
+            List list = (List)target;
+            Object value = item(args.length > 0 ? args[0] : null);
+            int index = index(args, 1, list.size(), 0);
+            if (list instanceof RandomAccess) {
+                for (int size = list.size(); index < size; index++) {
+                    if (same(list.get(index), value)) {
+                        return Integer.valueOf(index);
+                    }
+                }
+            } else {
+                for (ListIterator i = list.listIterator(index); i.hasNext(); index++) {
+                    if (same(i.next(), value)) {
+                        return Integer.valueOf(index);
+                    }
+                }
+            }
+            return Integer.valueOf(-1);
+        }
+    };
+    
+     /**
+     *  Returns a new list of this list's items followed by those of each argument.
+     *  Lists and arrays add their items, read through a view rather than copied
+     *  first, anything else is added itself.  The new list is sized up front.
+     *
+     *  @funcParams Object values...
      *  @funcReturn java.util.List
-     *  @example sortedList = list.sort()
+     *  @example all = list.concat(otherList, [1, 2], "foo")
      */
-    public static ExtensionFunction sort(final List list) {
+    public static ExtensionFunction concat(final List list) {
         return new ExtensionFunction() {    
             /** Auto-generated serialization id */
-            private static final long serialVersionUID = -6944406891031819279L;
+            private static final long serialVersionUID = 5530153283062294641L;
 
             public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
-                Collections.sort(list);
-                return null;
+                int size = list.size();
+                List[] lists = new List[args.length];
+                for (int x = 0; x < args.length; x++) {
+                    lists[x] = NativeArrayList.asList(args[x]);
+                    size += (lists[x] != null ? lists[x].size() : 1);
+                }
+                List result = new ArrayList(size);
+                result.addAll(list);
+                for (int x = 0; x < args.length; x++) {
+                    if (lists[x] != null) {
+                        result.addAll(lists[x]);
+                    } else {
+                        result.add(item(args[x]));
+                    }
+                }
+                return result;
             }
         };
     }
     
      /**
-     *  Sorts the list using the passed function to determine order.  The function will receive
-     *  two parameters, and should return &gt; 0 if the first is greater, &lt; 0 if the first
-     *  is less, and 0 if equal.
+     *  Adds the items of each argument to the end of the list.  Script arrays are
+     *  read through a {@link NativeArrayList} view instead of being converted to a
+     *  Java array first, Java lists and arrays are added as they are, and anything
+     *  else is added itself.
      *
-     *  @funcParams Function func
+     *  @funcParams Object values...
      *  @funcReturn java.util.List
-     *  @example sortedList = list.sort(function(val1, val2) { return val1.compareTo(val2) })
+     *  @example list.addItems(['foo', 'bar'], otherList)
      */
-    public static ExtensionFunction sortEach(final List list) {
+    public static ExtensionFunction addItems(final List list) {
         return new ExtensionFunction() {    
             /** Auto-generated serialization id */
-            private static final long serialVersionUID = 7270893019556217337L;
-
-            public Object execute(final Context cx, final Scriptable scope, final Scriptable thisObj, java.lang.Object[] args) {
-                final Object[] params = new Object[2];
-                final Function func = (Function)args[0];
-                Comparator comp = new Comparator() {
-                    public int compare(Object o1, Object o2) {
-                        params[0] = o1;
-                        params[1] = o2;
-                        Object result = func.call(cx, scope, thisObj,params);
-                        if (result instanceof Number) {
-                            return ((Number)result).intValue();
-                        } else {
-                            throw new RuntimeException("Invalid sorting function - should return a number.  Returned "+result);
-                        }
+            private static final long serialVersionUID = -7408214953071623620L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                for (int x = 0; x < args.length; x++) {
+                    List items = NativeArrayList.asList(args[x]);
+                    if (items != null) {
+                        list.addAll(items);
+                    } else {
+                        list.add(item(args[x]));
                     }
-                    
-                    public boolean equals(Object o) {return false;}
-                };
-                
-                Collections.sort(list, comp);
+                }
                 return list;
             }
         };
     }
+    
+    /**
+     * Resolves a script array style index argument: negative values count
+     * back from the end and the result is clamped to the list.
+     */
+    private static int index(Object[] args, int arg, int size, int defaultIndex) {
+        if (args.length <= arg || args[arg] == null || args[arg] instanceof Undefined) {
+            return defaultIndex;
+        }
+        int index = (int)Context.toNumber(args[arg]);
+        if (index < 0) {
+            index += size;
+        }
+        return Math.max(0, Math.min(size, index));
+    }
+    
+    private static Object item(Object value) {
+        if (value instanceof Wrapper) {
+            value = ((Wrapper)value).unwrap();
+        }
+        return (value instanceof Undefined ? null : value);
+    }
+    
+    private static List items(Object[] args, int from) {
+        List items = new ArrayList(args.length - from);
+        for (int x = from; x < args.length; x++) {
+            items.add(item(args[x]));
+        }
+        return items;
+    }
+    
+    private static boolean same(Object item, Object value) {
+        if (item instanceof Number && value instanceof Number) {
+            return ((Number)item).doubleValue() == ((Number)value).doubleValue();
+        }
+        return (item == null ? value == null : item.equals(value));
+    }
+    
+     /**
+     *  Finds a value in the sorted list in O(log n) comparisons.  Returns the index of
+     *  the value if it is found, otherwise (-(insertion point) - 1), like
+     *  java.util.Collections.binarySearch.  Numbers compare by value whatever their
+     *  type.
+     *
+     *  @funcParams Object value
+     *  @funcReturn int
+     *  @example index = list.binarySearch(42)
+     */
+    public static ExtensionFunction binarySearch(final List list) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -5855592998027973742L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return Integer.valueOf(SortedLists.binarySearch(cx, list, args[0], null));
+            }
+        };
+    }
+    
+     /**
+     *  Finds an item by key in a list sorted by the passed key function, calling the
+     *  function only for the O(log n) items compared.  Returns the index, or
+     *  (-(insertion point) - 1) if there is no item with the key.
+     *
+     *  @funcParams Function key, Object value
+     *  @funcReturn int
+     *  @example index = files.binarySearchBy(function(file) { return file.name }, 'foo.txt')
+     */
+    public static ExtensionFunction binarySearchBy(final List list) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 8449231414245929207L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return Integer.valueOf(SortedLists.binarySearch(cx, list, args[1], (Function)args[0]));
+            }
+        };
+    }
+    
+     /**
+     *  Returns the index of the first item in the sorted list that is not less than the
+     *  value, or the size of the list if there is none.  If the list is sorted by a key,
+     *  pass the key function as well.
+     *
+     *  @funcParams Object value, [Function key]
+     *  @funcReturn int
+     *  @example first = list.lowerBound(10)
+     */
+    public static ExtensionFunction lowerBound(final List list) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 454304035237924889L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return Integer.valueOf(SortedLists.bound(cx, list, args[0], key(args, 1), true));
+            }
+        };
+    }
+    
+     /**
+     *  Returns the index of the first item in the sorted list that is greater than the
+     *  value, or the size of the list if there is none.  If the list is sorted by a key,
+     *  pass the key function as well.
+     *
+     *  @funcParams Object value, [Function key]
+     *  @funcReturn int
+     *  @example end = list.upperBound(10)
+     */
+    public static ExtensionFunction upperBound(final List list) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 4791853673097691813L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return Integer.valueOf(SortedLists.bound(cx, list, args[0], key(args, 1), false));
+            }
+        };
+    }
+    
+     /**
+     *  Returns a view of the items of the sorted list from the first that is not less
+     *  than from up to, but not including, the first that is not less than to.  The
+     *  view is backed by the list, nothing is copied.  If the list is sorted by a key,
+     *  pass the key function as well.
+     *
+     *  @funcParams Object from, Object to, [Function key]
+     *  @funcReturn java.util.List
+     *  @example teens = ages.range(13, 20)
+     */
+    public static ExtensionFunction range(final List list) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 4791485434972901343L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                Function key = key(args, 2);
+                int from = SortedLists.bound(cx, list, args[0], key, true);
+                int to = SortedLists.bound(cx, list, args[1], key, true);
+                return list.subList(from, Math.max(from, to));
+            }
+        };
+    }
+    
+    private static Function key(Object[] args, int index) {
+        return (args.length > index && args[index] instanceof Function ? (Function)args[index] : null);
+    }
+    
+     /**
+     *  Sorts the list according to the natural order.
+     *
+     *  @funcParams 
+     *  @funcReturn java.util.List
+     *  @example sortedList = list.sort()
+     */
+    public static ExtensionFunction sort(List list) {
+        return SORT;
+    }
+
+    private static final ExtensionFunction SORT = new StatelessExtensionFunction() {
+        /** Auto-generated serialization id */
+        private static final long serialVersionUID = -6944406891031819279L;
+
+        public Object execute(Context cx, Scriptable scope, Scriptable thisObj, Object target, java.lang.Object[] args) {
+            List list = (List)target;
+            Collections.sort(list);
+            return null;
+        }
+    };
+    
+     /**
+     *  Sorts the list using the passed function to determine order.  The function will receive
+     *  two parameters, and should return &gt; 0 if the first is greater, &lt; 0 if the first
+     *  is less, and 0 if equal.  The sort is stable.  Long lists are sorted on several
+     *  threads, so the function may be called concurrently.
+     *
+     *  @funcParams Function func
+     *  @funcReturn java.util.List
+     *  @example sortedList = list.sort(function(val1, val2) { return val1.compareTo(val2) })
+     */
+    public static ExtensionFunction sortEach(List list) {
+        return SORT_EACH;
+    }
+
+    private static final ExtensionFunction SORT_EACH = new StatelessExtensionFunction() {
+        /** Auto-generated serialization id */
+        private static final long serialVersionUID = 7270893019556217337L;
+
+        public Object execute(Context cx, Scriptable scope, Scriptable thisObj, Object target, java.lang.Object[] args) {
+            List list = (List)target;
+            ListSorter.sortWith(cx, list, scope, thisObj, (Function)args[0]);
+            return list;
+        }
+    };
+    
+     /**
+     *  Sorts the list by the key the passed function returns for each item.  The function
+     *  is called once per item, and the keys are compared directly: as numbers if they are
+     *  all numbers, as strings if they are all strings, otherwise by their natural order.
+     *  Items with a null or undefined key go last.  The sort is stable.
+     *
+     *  @funcParams Function key
+     *  @funcReturn java.util.List
+     *  @example sortedList = list.sortBy(function(file) { return file.length() })
+     */
+    public static ExtensionFunction sortBy(List list) {
+        return SORT_BY;
+    }
+
+    private static final ExtensionFunction SORT_BY = new StatelessExtensionFunction() {
+        /** Auto-generated serialization id */
+        private static final long serialVersionUID = -3359826474160725873L;
+
+        public Object execute(Context cx, Scriptable scope, Scriptable thisObj, Object target, java.lang.Object[] args) {
+            List list = (List)target;
+            ListSorter.sortBy(cx, list, (Function)args[0]);
+            return list;
+        }
+    };
 }
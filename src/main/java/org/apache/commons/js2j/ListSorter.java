@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.UnaryOperator;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+
+/**
+ * Stable sorts of lists for the sortBy and sortEach extensions.  Lists of
+ * {@link #PARALLEL_THRESHOLD} or more elements are sorted in parallel on
+ * the pool of {@link ParallelCollections}, never the common pool.
+ */
+class ListSorter {
+
+    /** Lists at least this long are sorted in parallel */
+    static final int PARALLEL_THRESHOLD = 8192;
+
+    /** Number of chunks per worker when sorting with a script comparator */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private static final int NUMERIC = 0;
+    private static final int STRING = 1;
+    private static final int NATURAL = 2;
+
+    private ListSorter() {
+    }
+
+    /**
+     * Sorts the list by the keys the function returns, calling it exactly
+     * once per element.  Keys are then compared in Java: as doubles if they
+     * are all numbers, as strings if they are all strings, otherwise as
+     * {@link SortedLists#compare(Object, Object)} does, with numbers of any
+     * type compared by value.  Null and undefined keys sort last.
+     * <p>
+     * A {@link ReadWriteLockedList} is sorted through its own sort, under
+     * its write lock, so no other thread's change can land between reading
+     * the elements and writing them back sorted.  The keys are then worked
+     * out as the sort meets each element, still once per element.
+     */
+    static void sortBy(Context cx, List list, Function key) {
+        if (list instanceof ReadWriteLockedList) {
+            list.sort(new CachedKeyComparator(cx, key));
+            return;
+        }
+        Entry[] entries = new Entry[list.size()];
+        Scriptable scope = ScriptableObject.getTopLevelScope(key);
+        Object[] param = new Object[1];
+        boolean numbers = true;
+        boolean strings = true;
+        int x = 0;
+        for (ListIterator i = list.listIterator(); i.hasNext(); x++) {
+            Entry entry = new Entry();
+            entry.value = i.next();
+            Object k = callKey(cx, scope, key, param, entry.value);
+            if (k instanceof Number) {
+                entry.number = ((Number)k).doubleValue();
+                strings = false;
+            } else if (k instanceof String) {
+                numbers = false;
+            } else if (k != null) {
+                numbers = false;
+                strings = false;
+            }
+            entry.key = k;
+            entries[x] = entry;
+        }
+        Comparator comp = new EntryComparator(numbers ? NUMERIC : (strings ? STRING : NATURAL));
+        if (entries.length >= PARALLEL_THRESHOLD) {
+            Arrays.parallelSort(entries, comp);
+        } else {
+            Arrays.sort(entries, comp);
+        }
+        Object[] values = new Object[entries.length];
+        for (x = 0; x < entries.length; x++) {
+            values[x] = entries[x].value;
+        }
+        setAll(list, values);
+    }
+
+    /**
+     * Sorts the list with a script comparator function.  Long lists are cut
+     * into chunks sorted on the pool of {@link ParallelCollections} and
+     * merged, each task calling the function through its own Context and
+     * argument array, under the caller's budget.
+     */
+    static void sortWith(Context cx, List list, Scriptable scope, Scriptable thisObj, Function func) {
+        Object[] values = list.toArray();
+        if (values.length < PARALLEL_THRESHOLD) {
+            Arrays.sort(values, new ScriptComparator(cx, scope, thisObj, func));
+        } else {
+            ForkJoinPool pool = ParallelCollections.POOL;
+            int chunk = Math.max(PARALLEL_THRESHOLD / CHUNKS_PER_WORKER,
+                    values.length / (pool.getParallelism() * CHUNKS_PER_WORKER));
+            pool.invoke(new SortTask(new ParallelCollections.Caller(cx), scope, thisObj, func, values, new Object[values.length],
+                    0, values.length, chunk));
+        }
+        setAll(list, values);
+    }
+
+    private static Object callKey(Context cx, Scriptable scope, Function key, Object[] param, Object value) {
+        param[0] = value;
+        Object k = key.call(cx, scope, scope, param);
+        if (k instanceof Wrapper) {
+            k = ((Wrapper)k).unwrap();
+        }
+        return (k instanceof Undefined ? null : k);
+    }
+
+    /**
+     * Writes the sorted values back in a single replaceAll, which lists
+     * guarded by a lock, such as {@link ReadWriteLockedList}, do as one step.
+     */
+    private static void setAll(List list, final Object[] values) {
+        list.replaceAll(new UnaryOperator() {
+            private int next = 0;
+
+            public Object apply(Object value) {
+                return values[next++];
+            }
+        });
+    }
+
+    private static class Entry {
+        Object value;
+        Object key;
+        double number;
+    }
+
+    private static class EntryComparator implements Comparator {
+        private final int type;
+
+        EntryComparator(int type) {
+            this.type = type;
+        }
+
+        public int compare(Object o1, Object o2) {
+            Entry e1 = (Entry)o1;
+            Entry e2 = (Entry)o2;
+            if (e1.key == null || e2.key == null) {
+                return (e1.key == null ? (e2.key == null ? 0 : 1) : -1);
+            }
+            switch (type) {
+                case NUMERIC:
+                    return Double.compare(e1.number, e2.number);
+                case STRING:
+                    return ((String)e1.key).compareTo((String)e2.key);
+                default:
+                    return SortedLists.compare(e1.key, e2.key);
+            }
+        }
+    }
+
+    /**
+     * Compares elements by their keys, calling the key function the first
+     * time the sort meets each element and remembering the key.
+     */
+    private static class CachedKeyComparator implements Comparator {
+        private final Context cx;
+        private final Scriptable scope;
+        private final Function key;
+        private final Object[] param = new Object[1];
+        private final Map keys = new IdentityHashMap();
+
+        CachedKeyComparator(Context cx, Function key) {
+            this.cx = cx;
+            this.scope = ScriptableObject.getTopLevelScope(key);
+            this.key = key;
+        }
+
+        public int compare(Object o1, Object o2) {
+            Object k1 = keyOf(o1);
+            Object k2 = keyOf(o2);
+            if (k1 == null || k2 == null) {
+                return (k1 == null ? (k2 == null ? 0 : 1) : -1);
+            }
+            return SortedLists.compare(k1, k2);
+        }
+
+        private Object keyOf(Object value) {
+            Object k = keys.get(value);
+            if (k == null && !keys.containsKey(value)) {
+                k = callKey(cx, scope, key, param, value);
+                keys.put(value, k);
+            }
+            return k;
+        }
+    }
+
+    /**
+     * Calls a script function to compare, reusing its own argument array.
+     */
+    private static class ScriptComparator implements Comparator {
+        private final Context cx;
+        private final Scriptable scope;
+        private final Scriptable thisObj;
+        private final Function func;
+        private final Object[] params = new Object[2];
+
+        ScriptComparator(Context cx, Scriptable scope, Scriptable thisObj, Function func) {
+            this.cx = cx;
+            this.scope = scope;
+            this.thisObj = thisObj;
+            this.func = func;
+        }
+
+        public int compare(Object o1, Object o2) {
+            params[0] = o1;
+            params[1] = o2;
+            Object result = func.call(cx, scope, thisObj, params);
+            if (result instanceof Number) {
+                return ((Number)result).intValue();
+            } else {
+                throw new RuntimeException("Invalid sorting function - should return a number.  Returned "+result);
+            }
+        }
+    }
+
+    /**
+     * Stable parallel merge sort: chunks are sorted with Arrays.sort, then
+     * merged taking from the left half on ties.
+     */
+    private static class SortTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ParallelCollections.Caller caller;
+        private final Scriptable scope;
+        private final Scriptable thisObj;
+        private final Function func;
+        private final Object[] values;
+        private final Object[] buffer;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        SortTask(ParallelCollections.Caller caller, Scriptable scope, Scriptable thisObj, Function func,
+                Object[] values, Object[] buffer, int from, int to, int chunk) {
+            this.caller = caller;
+            this.scope = scope;
+            this.thisObj = thisObj;
+            this.func = func;
+            this.values = values;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        protected void compute() {
+            if (to - from <= chunk) {
+                ParallelCollections.Worker worker = caller.enter();
+                try {
+                    Arrays.sort(values, from, to, new ScriptComparator(worker.cx, scope, thisObj, func));
+                } finally {
+                    worker.exit();
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SortTask(caller, scope, thisObj, func, values, buffer, from, middle, chunk),
+                    new SortTask(caller, scope, thisObj, func, values, buffer, middle, to, chunk));
+            ParallelCollections.Worker worker = caller.enter();
+            try {
+                merge(new ScriptComparator(worker.cx, scope, thisObj, func), middle);
+            } finally {
+                worker.exit();
+            }
+        }
+
+        private void merge(Comparator comp, int middle) {
+            if (comp.compare(values[middle - 1], values[middle]) <= 0) {
+                // Already in order
+                return;
+            }
+            System.arraycopy(values, from, buffer, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int x = from; x < to; x++) {
+                if (right >= to || (left < middle && comp.compare(buffer[left], buffer[right]) <= 0)) {
+                    values[x] = buffer[left++];
+                } else {
+                    values[x] = buffer[right++];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.util.Arrays;
+
+/**
+ * A list of long values backed by a long[] array.
+ */
+public class LongList extends PrimitiveList {
+
+    private static final long serialVersionUID = 1L;
+
+    private long[] data;
+
+    public LongList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongList(int capacity) {
+        data = new long[capacity];
+    }
+
+    public LongList(long[] values) {
+        data = (long[])values.clone();
+        size = values.length;
+    }
+
+    public long getLong(int index) {
+        checkIndex(index);
+        return data[index];
+    }
+
+    /**
+     * @return the previous value at the index
+     */
+    public long setLong(int index, long value) {
+        checkIndex(index);
+        long old = data[index];
+        data[index] = value;
+        return old;
+    }
+
+    public void addLong(long value) {
+        if (size == data.length) {
+            ensureCapacity(size + 1);
+        }
+        data[size++] = value;
+        modCount++;
+    }
+
+    /**
+     * @return a copy of the values
+     */
+    public long[] toLongArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public Object get(int index) {
+        return Long.valueOf(getLong(index));
+    }
+
+    public double getDouble(int index) {
+        return getLong(index);
+    }
+
+    Object getArray() {
+        return data;
+    }
+
+    void setArray(Object array) {
+        data = (long[])array;
+    }
+
+    Object getValue(int index) {
+        return toValue(data[index]);
+    }
+
+    void store(int index, Object value) {
+        data[index] = toLong(value);
+    }
+
+    void aggregate(NumericAggregator agg) {
+        for (int x = 0; x < size; x++) {
+            agg.add(data[x]);
+        }
+    }
+}
@@ -32,8 +32,11 @@ public class Main {
 
     static class SugarListener implements Listener {
 
+        // Shared by every Context, the extension registry is loaded only once
+        private final SugarWrapFactory wrapFactory = new SugarWrapFactory();
+
         public void contextCreated(Context cx) {
-            cx.setWrapFactory(new SugarWrapFactory());
+            cx.setWrapFactory(wrapFactory);
         }
 
         public void contextReleased(Context cx) {
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+
+/**
+ * Adds various function extensions to java.util.Map implementations.
+ * @targetClass java.util.Map
+ */
+@ExtensionClass
+public class MapExtensions {
+
+     /**
+     *  Returns a copy of this map that can be shared between threads
+     *  without a single lock: reads don't block and writes only contend
+     *  on the same part of the map.  Null keys and values are not allowed,
+     *  and setting a key to null removes it.
+     *
+     *  @funcParams 
+     *  @funcReturn java.util.Map
+     *  @example cache = map.asConcurrent()
+     */
+    public static ExtensionFunction asConcurrent(final Map map) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 2958460121334418291L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return new ConcurrentHashMap(map);
+            }
+        };
+    }
+    
+     /**
+     *  Returns the value for the key, first storing the result of calling the
+     *  passed function with the key if there is none.  On a concurrent map
+     *  this happens atomically, so the function is called at most once per
+     *  key; it should be quick and must not change the map.
+     *
+     *  @funcParams Object key, Function func
+     *  @funcReturn Object
+     *  @example user = cache.computeIfAbsent(id, function(id) { return loadUser(id) })
+     */
+    public static ExtensionFunction computeIfAbsent(final Map map) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -4129567374209018553L;
+
+            public Object execute(final Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                final Function func = (Function)args[1];
+                return map.computeIfAbsent(args[0], new java.util.function.Function() {
+                    public Object apply(Object key) {
+                        return callFunction(cx, func, key, null, 1);
+                    }
+                });
+            }
+        };
+    }
+    
+     /**
+     *  Stores the value for the key if there is none, otherwise stores the
+     *  result of calling the passed function with the old and the new
+     *  value.  If the function returns null the key is removed.  On a
+     *  concurrent map this happens atomically, so it can be used for
+     *  counters shared between threads.
+     *
+     *  @funcParams Object key, Object value, Function func
+     *  @funcReturn Object
+     *  @example counts.merge(word, 1, function(total, one) { return total + one })
+     */
+    public static ExtensionFunction merge(final Map map) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 7817745028914016624L;
+
+            public Object execute(final Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                final Function func = (Function)args[2];
+                return map.merge(args[0], args[1], new java.util.function.BiFunction() {
+                    public Object apply(Object oldValue, Object value) {
+                        return callFunction(cx, func, oldValue, value, 2);
+                    }
+                });
+            }
+        };
+    }
+    
+    private static Object callFunction(Context cx, Function func, Object arg1, Object arg2, int argCount) {
+        Scriptable scope = ScriptableObject.getTopLevelScope(func);
+        Object[] params = (argCount == 1 ? new Object[] {arg1} : new Object[] {arg1, arg2});
+        Object result = func.call(cx, scope, scope, params);
+        if (result instanceof Wrapper) {
+            result = ((Wrapper)result).unwrap();
+        }
+        return (result instanceof Undefined ? null : result);
+    }
+}
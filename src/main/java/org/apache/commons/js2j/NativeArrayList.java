@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.NativeJavaObject;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+
+/**
+ * A java.util.List backed by a script array, so the array can be handed to
+ * Java code without copying it.  Items are converted as they are read or
+ * written: wrapped Java objects are unwrapped and undefined reads as null
+ * on the way out, and Java objects are wrapped on the way in, which needs
+ * no Context, so Java code can fill the list from any thread.  Changes
+ * made through the list show in the array and the other way round.
+ * Inserting and removing go through the array's own splice when a Context
+ * is current, which moves the elements of a dense array in one copy.
+ * {@link ScriptableList} is the view in the other direction, a Java list
+ * that scripts can index like an array.
+ */
+public class NativeArrayList extends AbstractList implements RandomAccess, Serializable {
+
+    /** Auto-generated serialization id */
+    private static final long serialVersionUID = -5839216542396704315L;
+    private final NativeArray array;
+
+    public NativeArrayList(NativeArray array) {
+        this.array = array;
+    }
+
+    /**
+     * Gets a list view of a value without copying it: script arrays are
+     * wrapped in a NativeArrayList, Java lists are used as they are and
+     * Java arrays through Arrays.asList.  Extensions taking a list argument
+     * use this to read whatever they are given in the cheapest way.
+     * @return the list, or null if the value isn't a list or array
+     */
+    public static List asList(Object value) {
+        if (value instanceof Wrapper) {
+            value = ((Wrapper)value).unwrap();
+        }
+        if (value instanceof List) {
+            return (List)value;
+        } else if (value instanceof NativeArray) {
+            return new NativeArrayList((NativeArray)value);
+        } else if (value instanceof Object[]) {
+            return Arrays.asList((Object[])value);
+        }
+        return null;
+    }
+
+    public NativeArray getArray() {
+        return array;
+    }
+
+    public int size() {
+        return (int)array.getLength();
+    }
+
+    public Object get(int index) {
+        checkIndex(index, size());
+        return toJava(array.get(index, array));
+    }
+
+    public Object set(int index, Object value) {
+        checkIndex(index, size());
+        Object old = toJava(array.get(index, array));
+        array.put(index, array, toScript(value));
+        return old;
+    }
+
+    public void add(int index, Object value) {
+        checkIndex(index, size() + 1);
+        splice(index, 0, new Object[] {toScript(value)});
+        modCount++;
+    }
+
+    /**
+     * Inserts all the items with a single move of the elements after them.
+     */
+    public boolean addAll(int index, Collection values) {
+        checkIndex(index, size() + 1);
+        Object[] items = values.toArray();
+        for (int x = 0; x < items.length; x++) {
+            items[x] = toScript(items[x]);
+        }
+        splice(index, 0, items);
+        modCount++;
+        return (items.length > 0);
+    }
+
+    public Object remove(int index) {
+        checkIndex(index, size());
+        Object old = toJava(array.get(index, array));
+        splice(index, 1, new Object[0]);
+        modCount++;
+        return old;
+    }
+
+    protected void removeRange(int fromIndex, int toIndex) {
+        splice(fromIndex, toIndex - fromIndex, new Object[0]);
+        modCount++;
+    }
+
+    public void clear() {
+        setLength(0);
+        modCount++;
+    }
+
+    /**
+     * Removes count elements at the index and inserts the items there.  The
+     * array's splice moves a dense array's elements with one arraycopy, but
+     * needs a Context; without one the elements are moved one at a time.
+     */
+    private void splice(int index, int count, Object[] items) {
+        Context cx = Context.getCurrentContext();
+        Object splice = (cx == null ? null : ScriptableObject.getProperty(array, "splice"));
+        if (splice instanceof Function) {
+            Object[] args = new Object[items.length + 2];
+            args[0] = Integer.valueOf(index);
+            args[1] = Integer.valueOf(count);
+            System.arraycopy(items, 0, args, 2, items.length);
+            ((Function)splice).call(cx, ScriptableObject.getTopLevelScope(array), array, args);
+            return;
+        }
+        int size = size();
+        int delta = items.length - count;
+        if (delta > 0) {
+            for (int x = size - 1; x >= index + count; x--) {
+                array.put(x + delta, array, array.get(x, array));
+            }
+        } else if (delta < 0) {
+            for (int x = index + count; x < size; x++) {
+                array.put(x + delta, array, array.get(x, array));
+            }
+            setLength(size + delta);
+        }
+        for (int x = 0; x < items.length; x++) {
+            array.put(index + x, array, items[x]);
+        }
+    }
+
+    private void setLength(int length) {
+        ScriptableObject.putProperty(array, "length", Integer.valueOf(length));
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private static Object toJava(Object value) {
+        if (value instanceof Wrapper) {
+            return ((Wrapper)value).unwrap();
+        }
+        return (value == Scriptable.NOT_FOUND || value instanceof Undefined ? null : value);
+    }
+
+    /**
+     * Strings, numbers, booleans and script objects are stored as they are.
+     * Other Java objects are wrapped by the current Context's wrap factory,
+     * so they get their extensions, or as plain Java objects when no
+     * Context is current.
+     */
+    private Object toScript(Object value) {
+        if (value == null || value instanceof String || value instanceof Number
+                || value instanceof Boolean || value instanceof Scriptable) {
+            return value;
+        } else if (value instanceof Character) {
+            return String.valueOf(value);
+        }
+        Scriptable scope = ScriptableObject.getTopLevelScope(array);
+        Context cx = Context.getCurrentContext();
+        if (cx != null) {
+            return cx.getWrapFactory().wrap(cx, scope, value, null);
+        }
+        return new NativeJavaObject(scope, value, null);
+    }
+}
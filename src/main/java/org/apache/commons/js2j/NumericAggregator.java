@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Accumulates count, sum, min, max, mean and variance of numbers in one
+ * pass.  Integral values are summed exactly in a long until it would
+ * overflow, other values in a double, and an exact sum is handed out as a
+ * Long so it keeps its precision past 2^53.  Mean and variance are kept with
+ * Welford's method so they stay accurate over large collections.  Null
+ * items are skipped, and {@link PrimitiveList}s are read without boxing.
+ */
+class NumericAggregator {
+
+    private long count;
+    private boolean exact = true;
+    private long longSum;
+    private double doubleSum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double mean;
+    private double m2;
+
+    /**
+     * Aggregates the items of the collection, or the numbers the key
+     * function returns for them.
+     * @param key the key function, or null to use the items themselves
+     */
+    static NumericAggregator aggregate(Context cx, Collection col, Function key) {
+        NumericAggregator agg = new NumericAggregator();
+        if (key != null) {
+            Scriptable scope = ScriptableObject.getTopLevelScope(key);
+            Object[] param = new Object[1];
+            for (Iterator i = col.iterator(); i.hasNext(); ) {
+                param[0] = i.next();
+                agg.add(key.call(cx, scope, scope, param));
+            }
+        } else if (col instanceof PrimitiveList) {
+            ((PrimitiveList)col).aggregate(agg);
+        } else if (col instanceof List && col instanceof RandomAccess) {
+            List list = (List)col;
+            for (int x = 0, size = list.size(); x < size; x++) {
+                agg.add(list.get(x));
+            }
+        } else {
+            for (Iterator i = col.iterator(); i.hasNext(); ) {
+                agg.add(i.next());
+            }
+        }
+        return agg;
+    }
+
+    /**
+     * Converts the items, or the numbers the key function returns for them,
+     * to doubles.  Null items are left out.
+     */
+    static double[] toDoubles(Context cx, Collection col, Function key) {
+        if (key == null && col instanceof PrimitiveList) {
+            PrimitiveList list = (PrimitiveList)col;
+            double[] values = new double[list.size()];
+            for (int x = 0; x < values.length; x++) {
+                values[x] = list.getDouble(x);
+            }
+            return values;
+        }
+        double[] values = new double[col.size()];
+        int count = 0;
+        Scriptable scope = (key == null ? null : ScriptableObject.getTopLevelScope(key));
+        Object[] param = new Object[1];
+        for (Iterator i = col.iterator(); i.hasNext(); ) {
+            Object val = i.next();
+            if (key != null) {
+                param[0] = val;
+                val = key.call(cx, scope, scope, param);
+            }
+            if (val != null && count < values.length) {
+                values[count++] = toDouble(val);
+            }
+        }
+        if (count < values.length) {
+            double[] trimmed = new double[count];
+            System.arraycopy(values, 0, trimmed, 0, count);
+            values = trimmed;
+        }
+        return values;
+    }
+
+    static double toDouble(Object val) {
+        if (val instanceof Number) {
+            return ((Number)val).doubleValue();
+        }
+        return ScriptRuntime.toNumber(val);
+    }
+
+    void add(Object val) {
+        if (val == null) {
+            return;
+        }
+        if (val instanceof Integer || val instanceof Long || val instanceof Short || val instanceof Byte) {
+            add(((Number)val).longValue());
+        } else {
+            add(toDouble(val));
+        }
+    }
+
+    void add(long val) {
+        count++;
+        if (exact) {
+            long sum = longSum + val;
+            if (((longSum ^ sum) & (val ^ sum)) < 0) {
+                // Overflow, carry on in a double
+                exact = false;
+                doubleSum = (double)longSum + val;
+            } else {
+                longSum = sum;
+            }
+        } else {
+            doubleSum += val;
+        }
+        update(val);
+    }
+
+    void add(double val) {
+        count++;
+        if (exact) {
+            exact = false;
+            doubleSum = longSum;
+        }
+        doubleSum += val;
+        update(val);
+    }
+
+    private void update(double val) {
+        if (val < min) {
+            min = val;
+        }
+        if (val > max) {
+            max = val;
+        }
+        double delta = val - mean;
+        mean += delta / count;
+        m2 += delta * (val - mean);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the sum as a Long while it is exact, otherwise as a Double
+     */
+    Number getSum() {
+        return (exact ? (Number)Long.valueOf(longSum) : Double.valueOf(doubleSum));
+    }
+
+    /**
+     * @return the smallest value, or null if there were none
+     */
+    Double getMin() {
+        return (count == 0 ? null : Double.valueOf(min));
+    }
+
+    /**
+     * @return the largest value, or null if there were none
+     */
+    Double getMax() {
+        return (count == 0 ? null : Double.valueOf(max));
+    }
+
+    /**
+     * @return the mean, NaN if there were no values
+     */
+    double getMean() {
+        return (count == 0 ? Double.NaN : mean);
+    }
+
+    /**
+     * @return the population variance, NaN if there were no values
+     */
+    double getVariance() {
+        return (count == 0 ? Double.NaN : m2 / count);
+    }
+}
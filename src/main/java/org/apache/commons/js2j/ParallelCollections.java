@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.WrapFactory;
+import org.mozilla.javascript.Wrapper;
+
+/**
+ * Runs a script function over the items of a collection on a fork-join
+ * pool of its own, so scripts never run on, or leave Contexts behind on, the
+ * common pool.  Random access lists are split by index, other collections
+ * through their spliterator.  Each task enters a Context from the calling
+ * Context's factory, set up like the caller's and held to the caller's
+ * {@link ExecutionBudget}, and puts it back as it was when done.  Results are
+ * merged back in the collection's order.
+ * <p>
+ * The function runs on several threads at once against the scope it was
+ * defined in, which is normally the caller's unsealed execution scope.
+ * Rhino keeps the scope itself consistent, but the function should only read
+ * shared state, such as the sealed shared scope of a {@link SugarRuntime},
+ * and keep what it writes in local variables.
+ */
+class ParallelCollections {
+
+    static final int EACH = 0;
+    static final int MAP = 1;
+    static final int FIND_ALL = 2;
+
+    /** Number of chunks per worker, so uneven items still balance */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    /** Pool that runs the parallel extensions, one daemon worker per processor */
+    static final ForkJoinPool POOL = new ForkJoinPool();
+
+    private ParallelCollections() {
+    }
+
+    /**
+     * @param mode one of {@link #EACH}, {@link #MAP} or {@link #FIND_ALL}
+     * @return the results in order, or null for {@link #EACH}
+     */
+    static List run(Context cx, Collection col, Function func, int mode) {
+        int size = col.size();
+        long chunk = Math.max(1, size / ((long)POOL.getParallelism() * CHUNKS_PER_WORKER));
+        Caller caller = new Caller(cx);
+        Task task;
+        if (col instanceof List && col instanceof RandomAccess) {
+            task = new Task(caller, func, mode, chunk, (List)col, 0, size, null);
+        } else {
+            task = new Task(caller, func, mode, chunk, null, 0, 0, col.spliterator());
+        }
+        return POOL.invoke(task);
+    }
+
+    /**
+     * The calling Context's settings and budget, taken on the calling
+     * thread, for the tasks to set up their own Contexts with.
+     */
+    static class Caller {
+        private final Context cx;
+        private final Object budget;
+
+        Caller(Context cx) {
+            this.cx = cx;
+            ContextFactory factory = cx.getFactory();
+            this.budget = (factory instanceof SugarContextFactory
+                    ? ((SugarContextFactory)factory).getBudgetState(cx) : null);
+        }
+
+        /**
+         * Enters a Context on the current thread that behaves like the
+         * caller's.  Must be matched by {@link Worker#exit()}.
+         */
+        Worker enter() {
+            return new Worker(this);
+        }
+    }
+
+    /**
+     * A Context entered for one task.  Its wrap factory and language version
+     * are put back on exit, as the same Context may be kept for the thread.
+     */
+    static class Worker {
+        final Context cx;
+        private final WrapFactory wrapFactory;
+        private final int languageVersion;
+        private final boolean budgeted;
+
+        Worker(Caller caller) {
+            ContextFactory factory = caller.cx.getFactory();
+            if (factory instanceof SugarContextFactory) {
+                cx = ((SugarContextFactory)factory).enterThreadContext();
+            } else {
+                cx = factory.enterContext();
+            }
+            wrapFactory = cx.getWrapFactory();
+            languageVersion = cx.getLanguageVersion();
+            boolean setUp = (cx != caller.cx && !cx.isSealed());
+            if (setUp) {
+                if (wrapFactory != caller.cx.getWrapFactory()) {
+                    cx.setWrapFactory(caller.cx.getWrapFactory());
+                }
+                if (languageVersion != caller.cx.getLanguageVersion()) {
+                    cx.setLanguageVersion(caller.cx.getLanguageVersion());
+                }
+            }
+            budgeted = (setUp && caller.budget != null);
+            if (budgeted) {
+                ((SugarContextFactory)factory).enterSharedBudget(cx, caller.budget);
+            }
+        }
+
+        void exit() {
+            try {
+                if (budgeted) {
+                    ((SugarContextFactory)cx.getFactory()).exitBudget(cx);
+                }
+                if (cx.getWrapFactory() != wrapFactory) {
+                    cx.setWrapFactory(wrapFactory);
+                }
+                if (cx.getLanguageVersion() != languageVersion) {
+                    cx.setLanguageVersion(languageVersion);
+                }
+            } finally {
+                Context.exit();
+            }
+        }
+    }
+
+    private static class Task extends RecursiveTask<List> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Caller caller;
+        private final Function func;
+        private final int mode;
+        private final long chunk;
+        private final List list;
+        private final int from;
+        private final int to;
+        private final Spliterator items;
+
+        Task(Caller caller, Function func, int mode, long chunk, List list, int from, int to, Spliterator items) {
+            this.caller = caller;
+            this.func = func;
+            this.mode = mode;
+            this.chunk = chunk;
+            this.list = list;
+            this.from = from;
+            this.to = to;
+            this.items = items;
+        }
+
+        protected List compute() {
+            Task left = null;
+            Task right = null;
+            if (list != null && to - from > chunk) {
+                int middle = (from + to) >>> 1;
+                left = new Task(caller, func, mode, chunk, list, from, middle, null);
+                right = new Task(caller, func, mode, chunk, list, middle, to, null);
+            } else if (items != null && items.estimateSize() > chunk) {
+                Spliterator prefix = items.trySplit();
+                if (prefix != null) {
+                    left = new Task(caller, func, mode, chunk, null, 0, 0, prefix);
+                    right = new Task(caller, func, mode, chunk, null, 0, 0, items);
+                }
+            }
+            if (left != null) {
+                right.fork();
+                List results = left.compute();
+                List rightResults = right.join();
+                if (results != null) {
+                    results.addAll(rightResults);
+                }
+                return results;
+            }
+            return computeDirectly();
+        }
+
+        private List computeDirectly() {
+            Worker worker = caller.enter();
+            final Context cx = worker.cx;
+            try {
+                final Scriptable scope = ScriptableObject.getTopLevelScope(func);
+                final Object[] param = new Object[1];
+                final List results = (mode == EACH ? null : new ArrayList());
+                if (list != null) {
+                    for (int x = from; x < to; x++) {
+                        apply(cx, scope, param, list.get(x), results);
+                    }
+                } else {
+                    items.forEachRemaining(new Consumer() {
+                        public void accept(Object item) {
+                            apply(cx, scope, param, item, results);
+                        }
+                    });
+                }
+                return results;
+            } finally {
+                worker.exit();
+            }
+        }
+
+        private void apply(Context cx, Scriptable scope, Object[] param, Object item, List results) {
+            param[0] = item;
+            Object result = func.call(cx, scope, scope, param);
+            if (result instanceof Wrapper) {
+                result = ((Wrapper)result).unwrap();
+            }
+            if (mode == MAP) {
+                results.add(result instanceof Undefined ? null : result);
+            } else if (mode == FIND_ALL && result != null && !(result instanceof Undefined)) {
+                results.add(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Wrapper;
+
+/**
+ * A lazy chain of operations over a collection, returned by
+ * <code>col.lazy()</code>.  Operations like {@link #map(Function)} and
+ * {@link #filter(Function)} only describe a stage and return a new pipeline;
+ * nothing runs until a terminal operation such as {@link #toList()} or
+ * {@link #count()} is called.  The stages are then fused into a single pass
+ * over the source, each item pushed through every stage in turn, so no
+ * intermediate collections are built and the pass stops as soon as
+ * {@link #take(int)} or {@link #first()} has what it needs.
+ * <p>
+ * Pipelines are immutable, so one can be used as the start of several
+ * others.
+ */
+public class Pipeline {
+
+    private static final int MAP = 0;
+    private static final int FILTER = 1;
+    private static final int TAKE = 2;
+    private static final int SKIP = 3;
+    private static final int FLAT_MAP = 4;
+
+    private final Iterable source;
+    private final Pipeline parent;
+    private final int op;
+    private final Function func;
+    private final long limit;
+    private final Scriptable thisObj;
+
+    public Pipeline(Iterable source) {
+        this(source, null);
+    }
+
+    /**
+     * @param thisObj the object the stage functions are called on, like the
+     *        collection's wrapper, or null for their top-level scope
+     */
+    public Pipeline(Iterable source, Scriptable thisObj) {
+        this(source, thisObj, null, -1, null, 0);
+    }
+
+    private Pipeline(Iterable source, Scriptable thisObj, Pipeline parent, int op, Function func, long limit) {
+        this.source = source;
+        this.thisObj = thisObj;
+        this.parent = parent;
+        this.op = op;
+        this.func = func;
+        this.limit = limit;
+    }
+
+    /**
+     * Replaces each item with the result of the function.
+     * @example col.lazy().map(function(item) { return item.name })
+     */
+    public Pipeline map(Function func) {
+        return new Pipeline(source, thisObj, this, MAP, func, 0);
+    }
+
+    /**
+     * Keeps the items the function returns true for.
+     * @example col.lazy().filter(function(item) { return item.size() > 0 })
+     */
+    public Pipeline filter(Function func) {
+        return new Pipeline(source, thisObj, this, FILTER, func, 0);
+    }
+
+    /**
+     * Keeps only the first count items, stopping the pass after them.
+     */
+    public Pipeline take(int count) {
+        return new Pipeline(source, thisObj, this, TAKE, null, count);
+    }
+
+    /**
+     * Drops the first count items.
+     */
+    public Pipeline skip(int count) {
+        return new Pipeline(source, thisObj, this, SKIP, null, count);
+    }
+
+    /**
+     * Replaces each item with the items of the collection or array the
+     * function returns.
+     * @example col.lazy().flatMap(function(dir) { return dir.listFiles() })
+     */
+    public Pipeline flatMap(Function func) {
+        return new Pipeline(source, thisObj, this, FLAT_MAP, func, 0);
+    }
+
+    /**
+     * Combines the items, calling the function with the result so far and
+     * the next item, starting from the first item.
+     * @return the combined result, or null if there were no items
+     */
+    public Object reduce(Function func) {
+        return reduce(func, null, false);
+    }
+
+    /**
+     * Combines the items, calling the function with the result so far and
+     * the next item, starting from the initial value.
+     * @example total = col.lazy().reduce(function(sum, item) { return sum + item }, 0)
+     */
+    public Object reduce(Function func, Object initial) {
+        return reduce(func, initial, true);
+    }
+
+    private Object reduce(final Function func, Object initial, final boolean hasInitial) {
+        final Object[] result = new Object[] {initial};
+        run(new Sink() {
+            private final Caller caller = new Caller(func, thisObj, 2);
+            private boolean started = hasInitial;
+
+            boolean accept(Object item) {
+                if (!started) {
+                    result[0] = item;
+                    started = true;
+                } else {
+                    result[0] = caller.call(result[0], item);
+                }
+                return true;
+            }
+        });
+        return result[0];
+    }
+
+    /**
+     * @return the first item, or null if there are none
+     */
+    public Object first() {
+        final Object[] result = new Object[1];
+        run(new Sink() {
+            boolean accept(Object item) {
+                result[0] = item;
+                return false;
+            }
+        });
+        return result[0];
+    }
+
+    /**
+     * @return the number of items
+     */
+    public long count() {
+        final long[] count = new long[1];
+        run(new Sink() {
+            boolean accept(Object item) {
+                count[0]++;
+                return true;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * @return the items in a new list
+     */
+    public List toList() {
+        final List list = new ArrayList();
+        run(new Sink() {
+            boolean accept(Object item) {
+                list.add(item instanceof Wrapper ? ((Wrapper)item).unwrap() : item);
+                return true;
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Pushes the source items through the fused stages into the sink until
+     * either runs out.  A stage that takes no items ends the pass before
+     * anything is read from the source.
+     */
+    private void run(Sink sink) {
+        for (Pipeline stage = this; stage.parent != null; stage = stage.parent) {
+            if (stage.op == TAKE && stage.limit <= 0) {
+                return;
+            }
+            sink = stage.createSink(sink);
+        }
+        for (Iterator i = source.iterator(); i.hasNext(); ) {
+            if (!sink.accept(i.next())) {
+                break;
+            }
+        }
+    }
+
+    private Sink createSink(final Sink next) {
+        switch (op) {
+            case MAP:
+                return new Sink() {
+                    private final Caller caller = new Caller(func, thisObj, 1);
+
+                    boolean accept(Object item) {
+                        return next.accept(caller.call(item));
+                    }
+                };
+            case FILTER:
+                return new Sink() {
+                    private final Caller caller = new Caller(func, thisObj, 1);
+
+                    boolean accept(Object item) {
+                        if (ScriptRuntime.toBoolean(caller.call(item))) {
+                            return next.accept(item);
+                        }
+                        return true;
+                    }
+                };
+            case TAKE:
+                return new Sink() {
+                    private long taken = 0;
+
+                    boolean accept(Object item) {
+                        if (taken >= limit) {
+                            return false;
+                        }
+                        taken++;
+                        return next.accept(item) && taken < limit;
+                    }
+                };
+            case SKIP:
+                return new Sink() {
+                    private long skipped = 0;
+
+                    boolean accept(Object item) {
+                        if (skipped < limit) {
+                            skipped++;
+                            return true;
+                        }
+                        return next.accept(item);
+                    }
+                };
+            case FLAT_MAP:
+                return new Sink() {
+                    private final Caller caller = new Caller(func, thisObj, 1);
+
+                    boolean accept(Object item) {
+                        return acceptAll(caller.call(item), next);
+                    }
+                };
+            default:
+                throw new IllegalStateException("Unknown pipeline operation: " + op);
+        }
+    }
+
+    private static boolean acceptAll(Object items, Sink sink) {
+        if (items instanceof Wrapper) {
+            items = ((Wrapper)items).unwrap();
+        }
+        if (items instanceof Iterable) {
+            for (Iterator i = ((Iterable)items).iterator(); i.hasNext(); ) {
+                if (!sink.accept(i.next())) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (items instanceof Object[]) {
+            Object[] array = (Object[])items;
+            for (int x = 0; x < array.length; x++) {
+                if (!sink.accept(array[x])) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (items instanceof NativeArray) {
+            NativeArray array = (NativeArray)items;
+            long length = array.getLength();
+            for (int x = 0; x < length; x++) {
+                if (!sink.accept(array.get(x, array))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (items == null || items == Context.getUndefinedValue()) {
+            return true;
+        }
+        return sink.accept(items);
+    }
+
+    /**
+     * Receives items pushed through the pipeline.
+     */
+    private abstract static class Sink {
+        /**
+         * @return false if no more items are wanted
+         */
+        abstract boolean accept(Object item);
+    }
+
+    /**
+     * Calls a script function for each item, reusing the argument array.
+     */
+    private static class Caller {
+        private final Function func;
+        private final Context cx = Context.getCurrentContext();
+        private final Scriptable scope;
+        private final Scriptable thisObj;
+        private final Object[] params;
+
+        Caller(Function func, Scriptable thisObj, int paramCount) {
+            this.func = func;
+            this.scope = ScriptableObject.getTopLevelScope(func);
+            this.thisObj = (thisObj != null ? thisObj : scope);
+            this.params = new Object[paramCount];
+        }
+
+        Object call(Object item) {
+            params[0] = item;
+            return func.call(cx, scope, thisObj, params);
+        }
+
+        Object call(Object result, Object item) {
+            params[0] = result;
+            params[1] = item;
+            return func.call(cx, scope, thisObj, params);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Adds function extensions to Java int[], long[], double[] and byte[]
+ * arrays, which scripts get as {@link ScriptablePrimitiveArray}s.  The
+ * wrapper hands extensions a {@link PrimitiveArrayList} view of the array,
+ * so each function is written once for every element type, and the
+ * elements are neither copied nor, for the aggregations, boxed.  The list
+ * extensions apply to the view as well.
+ * @targetClass org.apache.commons.js2j.PrimitiveArrayList
+ */
+@ExtensionClass
+public class PrimitiveArrayExtensions {
+
+     /**
+     *  Calls the passed function with each element of the array in turn.
+     *
+     *  @funcParams Function func
+     *  @funcReturn void
+     *  @example values.each(function(val) { print(val) })
+     */
+    public static ExtensionFunction each(final PrimitiveArrayList array) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -5855146169865274151L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                Function func = (Function)args[0];
+                Object[] param = new Object[1];
+                for (int x = 0, size = array.size(); x < size; x++) {
+                    param[0] = array.getValue(x);
+                    func.call(cx, scope, thisObj, param);
+                }
+                return null;
+            }
+        };
+    }
+    
+     /**
+     *  Finds the first element selected by the passed function.  The function
+     *  will receive the element and its result is returned if it isn't null.
+     *
+     *  @funcParams Function func
+     *  @funcReturn Object
+     *  @example big = values.find(function(val) { return val > 100 ? val : null })
+     */
+    public static ExtensionFunction find(final PrimitiveArrayList array) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -6136685191343672484L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                Function func = (Function)args[0];
+                Object[] param = new Object[1];
+                Object match = null;
+                for (int x = 0, size = array.size(); x < size; x++) {
+                    param[0] = array.getValue(x);
+                    match = func.call(cx, scope, thisObj, param);
+                    if (match != null) {
+                        return match;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+    
+     /**
+     *  Sorts the array in place into ascending numerical order.
+     *
+     *  @funcParams 
+     *  @funcReturn Object
+     *  @example values.sort()
+     */
+    public static ExtensionFunction sort(final PrimitiveArrayList array) {
+        return new ExtensionFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 4905778569337371051L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                array.sort();
+                return array;
+            }
+        };
+    }
+    
+     /**
+     *  Adds up the elements of the array without boxing them.  Integer
+     *  elements are summed exactly.
+     *
+     *  @funcParams 
+     *  @funcReturn Number
+     *  @example total = values.sum()
+     */
+    public static ExtensionFunction sum(final PrimitiveArrayList array) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 8451575717387091276L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return NumericAggregator.aggregate(cx, array, null).getSum();
+            }
+        };
+    }
+    
+     /**
+     *  Finds the smallest element of the array, or null if it is empty.
+     *
+     *  @funcParams 
+     *  @funcReturn Number
+     *  @example smallest = values.min()
+     */
+    public static ExtensionFunction min(final PrimitiveArrayList array) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 6368095764676667362L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return NumericAggregator.aggregate(cx, array, null).getMin();
+            }
+        };
+    }
+    
+     /**
+     *  Finds the largest element of the array, or null if it is empty.
+     *
+     *  @funcParams 
+     *  @funcReturn Number
+     *  @example largest = values.max()
+     */
+    public static ExtensionFunction max(final PrimitiveArrayList array) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -3604475756059696087L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return NumericAggregator.aggregate(cx, array, null).getMax();
+            }
+        };
+    }
+    
+     /**
+     *  Averages the elements of the array, NaN if it is empty.
+     *
+     *  @funcParams 
+     *  @funcReturn Number
+     *  @example average = values.avg()
+     */
+    public static ExtensionFunction avg(final PrimitiveArrayList array) {
+        return new ScriptValueFunction() {    
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 9133522274303466145L;
+
+            public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+                return Double.valueOf(NumericAggregator.aggregate(cx, array, null).getMean());
+            }
+        };
+    }
+}
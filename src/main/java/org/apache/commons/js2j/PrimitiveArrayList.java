@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.util.Arrays;
+
+import org.mozilla.javascript.ScriptRuntime;
+
+/**
+ * A fixed-size {@link PrimitiveList} view of a Java int[], long[], double[]
+ * or byte[] array.  Reads and writes go straight to the array, so the
+ * extensions that understand primitive lists, such as the aggregations,
+ * run over the array without boxing or copying it.  The size can't
+ * change, so adding, removing and clearing are not supported.
+ */
+abstract class PrimitiveArrayList extends PrimitiveList {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @return the view of the array, or null if it isn't an array of a
+     *         supported primitive type
+     */
+    static PrimitiveArrayList of(Object array) {
+        if (array instanceof int[]) {
+            return new IntArray((int[])array);
+        } else if (array instanceof long[]) {
+            return new LongArray((long[])array);
+        } else if (array instanceof double[]) {
+            return new DoubleArray((double[])array);
+        } else if (array instanceof byte[]) {
+            return new ByteArray((byte[])array);
+        }
+        return null;
+    }
+
+    /**
+     * Sorts the array into ascending numerical order.
+     */
+    abstract void sort();
+
+    public void clear() {
+        throw new UnsupportedOperationException("Arrays can't change size");
+    }
+
+    public void add(int index, Object value) {
+        throw new UnsupportedOperationException("Arrays can't change size");
+    }
+
+    public Object remove(int index) {
+        throw new UnsupportedOperationException("Arrays can't change size");
+    }
+
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > size) {
+            throw new UnsupportedOperationException("Arrays can't change size");
+        }
+    }
+
+    public void trimToSize() {
+    }
+
+    void setArray(Object array) {
+        throw new UnsupportedOperationException("Arrays can't change size");
+    }
+
+    void putValue(int index, Object value) {
+        checkIndex(index);
+        store(index, value);
+    }
+
+    static class IntArray extends PrimitiveArrayList {
+        private static final long serialVersionUID = 1L;
+        private final int[] data;
+
+        IntArray(int[] data) {
+            this.data = data;
+            this.size = data.length;
+        }
+
+        Object getArray() {
+            return data;
+        }
+
+        void sort() {
+            Arrays.sort(data);
+        }
+
+        public Object get(int index) {
+            checkIndex(index);
+            return Integer.valueOf(data[index]);
+        }
+
+        public double getDouble(int index) {
+            checkIndex(index);
+            return data[index];
+        }
+
+        Object getValue(int index) {
+            return Integer.valueOf(data[index]);
+        }
+
+        void store(int index, Object value) {
+            data[index] = ScriptRuntime.toInt32(value);
+        }
+
+        void aggregate(NumericAggregator agg) {
+            for (int x = 0; x < size; x++) {
+                agg.add((long)data[x]);
+            }
+        }
+    }
+
+    static class LongArray extends PrimitiveArrayList {
+        private static final long serialVersionUID = 1L;
+        private final long[] data;
+
+        LongArray(long[] data) {
+            this.data = data;
+            this.size = data.length;
+        }
+
+        Object getArray() {
+            return data;
+        }
+
+        void sort() {
+            Arrays.sort(data);
+        }
+
+        public Object get(int index) {
+            checkIndex(index);
+            return Long.valueOf(data[index]);
+        }
+
+        public double getDouble(int index) {
+            checkIndex(index);
+            return data[index];
+        }
+
+        Object getValue(int index) {
+            return toValue(data[index]);
+        }
+
+        void store(int index, Object value) {
+            data[index] = toLong(value);
+        }
+
+        void aggregate(NumericAggregator agg) {
+            for (int x = 0; x < size; x++) {
+                agg.add(data[x]);
+            }
+        }
+    }
+
+    static class DoubleArray extends PrimitiveArrayList {
+        private static final long serialVersionUID = 1L;
+        private final double[] data;
+
+        DoubleArray(double[] data) {
+            this.data = data;
+            this.size = data.length;
+        }
+
+        Object getArray() {
+            return data;
+        }
+
+        void sort() {
+            Arrays.sort(data);
+        }
+
+        public Object get(int index) {
+            checkIndex(index);
+            return Double.valueOf(data[index]);
+        }
+
+        public double getDouble(int index) {
+            checkIndex(index);
+            return data[index];
+        }
+
+        Object getValue(int index) {
+            return toValue(data[index]);
+        }
+
+        void store(int index, Object value) {
+            data[index] = ScriptRuntime.toNumber(value);
+        }
+
+        void aggregate(NumericAggregator agg) {
+            for (int x = 0; x < size; x++) {
+                agg.add(data[x]);
+            }
+        }
+    }
+
+    static class ByteArray extends PrimitiveArrayList {
+        private static final long serialVersionUID = 1L;
+        private final byte[] data;
+
+        ByteArray(byte[] data) {
+            this.data = data;
+            this.size = data.length;
+        }
+
+        Object getArray() {
+            return data;
+        }
+
+        void sort() {
+            Arrays.sort(data);
+        }
+
+        public Object get(int index) {
+            checkIndex(index);
+            return Byte.valueOf(data[index]);
+        }
+
+        public double getDouble(int index) {
+            checkIndex(index);
+            return data[index];
+        }
+
+        Object getValue(int index) {
+            return Integer.valueOf(data[index]);
+        }
+
+        void store(int index, Object value) {
+            data[index] = (byte)ScriptRuntime.toInt32(value);
+        }
+
+        void aggregate(NumericAggregator agg) {
+            for (int x = 0; x < size; x++) {
+                agg.add((long)data[x]);
+            }
+        }
+    }
+}
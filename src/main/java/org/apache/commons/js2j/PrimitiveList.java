@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import org.mozilla.javascript.ScriptRuntime;
+
+/**
+ * Base class for lists that store numbers in a primitive array rather than
+ * as boxed objects.  Besides the usual List methods, which box values on the
+ * way out, each subclass has typed accessors, and scripts reach the array
+ * directly through {@link ScriptablePrimitiveList}.  Values stored through
+ * the List methods are converted like script values, so null becomes zero
+ * rather than an error.
+ * <p>
+ * Subclasses only supply the array and how to read and store a single
+ * element; growing, shifting and the List methods are done here.
+ */
+public abstract class PrimitiveList extends AbstractList implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected static final int DEFAULT_CAPACITY = 10;
+
+    private static final Integer ZERO = Integer.valueOf(0);
+
+    protected int size;
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    public Object set(int index, Object value) {
+        Object old = get(index);
+        store(index, value);
+        return old;
+    }
+
+    public void add(int index, Object value) {
+        checkPositionIndex(index);
+        ensureCapacity(size + 1);
+        Object data = getArray();
+        System.arraycopy(data, index, data, index + 1, size - index);
+        size++;
+        store(index, value);
+        modCount++;
+    }
+
+    public Object remove(int index) {
+        Object old = get(index);
+        Object data = getArray();
+        System.arraycopy(data, index + 1, data, index, size - index - 1);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    /**
+     * @return the element at the index as a double
+     */
+    public abstract double getDouble(int index);
+
+    /**
+     * Makes sure the list can hold at least the given number of elements
+     * without growing its array.
+     */
+    public void ensureCapacity(int minCapacity) {
+        Object data = getArray();
+        int length = Array.getLength(data);
+        if (minCapacity > length) {
+            setArray(copyOf(data, newCapacity(length, minCapacity)));
+        }
+    }
+
+    /**
+     * Shrinks the array to the size of the list.
+     */
+    public void trimToSize() {
+        Object data = getArray();
+        if (size < Array.getLength(data)) {
+            setArray(copyOf(data, size));
+            modCount++;
+        }
+    }
+
+    /**
+     * @return the primitive array holding the elements, which may be longer
+     *         than the list
+     */
+    abstract Object getArray();
+
+    /**
+     * Replaces the array after it has been grown or shrunk.
+     */
+    abstract void setArray(Object array);
+
+    /**
+     * @return the element at the index as a script number.  Scriptable.get
+     *         returns an Object, so this boxes, though small integers come
+     *         from the shared cache
+     */
+    abstract Object getValue(int index);
+
+    /**
+     * Stores a value at an index within the list, converting it to the
+     * element type as a script assignment would.
+     */
+    abstract void store(int index, Object value);
+
+    /**
+     * Stores a script value at the index.  Indexes past the end grow the
+     * list, filling the gap with zeros.
+     */
+    void putValue(int index, Object value) {
+        if (index >= size) {
+            ensureCapacity(index + 1);
+            for (int x = size; x < index; x++) {
+                store(x, ZERO);
+            }
+            size = index + 1;
+            modCount++;
+        }
+        store(index, value);
+    }
+
+    /**
+     * Adds every element to the aggregator.
+     */
+    abstract void aggregate(NumericAggregator agg);
+
+    protected void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    protected void checkPositionIndex(int index) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * @return the capacity to grow an array of the current length to so it
+     *         holds at least minCapacity elements
+     */
+    protected static int newCapacity(int length, int minCapacity) {
+        int capacity = length + (length >> 1) + 1;
+        return (capacity < minCapacity || capacity < 0 ? minCapacity : capacity);
+    }
+
+    /**
+     * @return a whole number as a script value, from Integer's cache when
+     *         it is small
+     */
+    static Object toValue(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return Integer.valueOf((int)value);
+        }
+        return ScriptRuntime.wrapNumber(value);
+    }
+
+    /**
+     * @return a number as a script value, from Integer's cache when it is a
+     *         small whole number
+     */
+    static Object toValue(double value) {
+        int whole = (int)value;
+        if (whole == value && whole >= -128 && whole <= 127 && (whole != 0 || 1 / value > 0)) {
+            return Integer.valueOf(whole);
+        }
+        return ScriptRuntime.wrapNumber(value);
+    }
+
+    /**
+     * @return a script value as a long, exactly if it is already a whole
+     *         Java number
+     */
+    static long toLong(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number)value).longValue();
+        }
+        return (long)ScriptRuntime.toNumber(value);
+    }
+
+    private static Object copyOf(Object array, int length) {
+        Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+        System.arraycopy(array, 0, copy, 0, Math.min(length, Array.getLength(array)));
+        return copy;
+    }
+}
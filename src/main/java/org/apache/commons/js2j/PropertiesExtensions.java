@@ -31,6 +31,7 @@ import org.mozilla.javascript.Scriptable;
  * Adds various functions to java.util.Properties
  * @targetClass java.util.Properties
  */
+@ExtensionClass
 public class PropertiesExtensions {
 
 
@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A thread-safe view of a list guarded by a read-write lock, so any number
+ * of threads can read at once and only writes are exclusive, unlike
+ * Collections.synchronizedList, which serializes every access.  Bulk
+ * changes such as removeAll, removeIf and sort run under the write lock as
+ * one step.  Iterators work on a read-only snapshot taken when they are
+ * created, so iterating never needs external locking and never sees a
+ * concurrent change.
+ */
+public class ReadWriteLockedList extends AbstractList implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List list;
+    private final Lock readLock;
+    private final Lock writeLock;
+
+    public ReadWriteLockedList(List list) {
+        this.list = list;
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+    }
+
+    public Object get(int index) {
+        readLock.lock();
+        try {
+            return list.get(index);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public int size() {
+        readLock.lock();
+        try {
+            return list.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public boolean contains(Object o) {
+        readLock.lock();
+        try {
+            return list.contains(o);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public int indexOf(Object o) {
+        readLock.lock();
+        try {
+            return list.indexOf(o);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public int lastIndexOf(Object o) {
+        readLock.lock();
+        try {
+            return list.lastIndexOf(o);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public Object[] toArray() {
+        readLock.lock();
+        try {
+            return list.toArray();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public Object[] toArray(Object[] a) {
+        readLock.lock();
+        try {
+            return list.toArray(a);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public Iterator iterator() {
+        return snapshot().iterator();
+    }
+
+    /**
+     * The iterator reads a snapshot, so it can't change the list: set, add
+     * and remove throw UnsupportedOperationException.
+     */
+    public ListIterator listIterator(int index) {
+        return snapshot().listIterator(index);
+    }
+
+    private List snapshot() {
+        return Collections.unmodifiableList(Arrays.asList(toArray()));
+    }
+
+    /**
+     * @return the collection, or a snapshot of it if it is another locked
+     *         list, so a bulk change never holds this list's lock while
+     *         waiting for another's
+     */
+    private static Collection stable(Collection c) {
+        return (c instanceof ReadWriteLockedList ? Arrays.asList(c.toArray()) : c);
+    }
+
+    public Object set(int index, Object element) {
+        writeLock.lock();
+        try {
+            return list.set(index, element);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean add(Object o) {
+        writeLock.lock();
+        try {
+            return list.add(o);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void add(int index, Object element) {
+        writeLock.lock();
+        try {
+            list.add(index, element);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean addAll(Collection c) {
+        Object[] items = c.toArray();
+        writeLock.lock();
+        try {
+            return list.addAll(Arrays.asList(items));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean addAll(int index, Collection c) {
+        Object[] items = c.toArray();
+        writeLock.lock();
+        try {
+            return list.addAll(index, Arrays.asList(items));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public Object remove(int index) {
+        writeLock.lock();
+        try {
+            return list.remove(index);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean remove(Object o) {
+        writeLock.lock();
+        try {
+            return list.remove(o);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void clear() {
+        writeLock.lock();
+        try {
+            list.clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean removeAll(Collection c) {
+        c = stable(c);
+        writeLock.lock();
+        try {
+            return list.removeAll(c);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean retainAll(Collection c) {
+        c = stable(c);
+        writeLock.lock();
+        try {
+            return list.retainAll(c);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean removeIf(Predicate filter) {
+        writeLock.lock();
+        try {
+            return list.removeIf(filter);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void replaceAll(UnaryOperator operator) {
+        writeLock.lock();
+        try {
+            list.replaceAll(operator);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void sort(Comparator c) {
+        writeLock.lock();
+        try {
+            list.sort(c);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    protected void removeRange(int fromIndex, int toIndex) {
+        writeLock.lock();
+        try {
+            list.subList(fromIndex, toIndex).clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        readLock.lock();
+        try {
+            return list.equals(o);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public int hashCode() {
+        readLock.lock();
+        try {
+            return list.hashCode();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public String toString() {
+        readLock.lock();
+        try {
+            return list.toString();
+        } finally {
+            readLock.unlock();
+        }
+    }
+}
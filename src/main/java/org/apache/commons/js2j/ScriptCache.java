@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.GeneratedClassLoader;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+
+/**
+ * Least recently used cache of compiled scripts, keyed by a hash of the
+ * source and the Context options that affect compilation.  The source name
+ * used the first time a script is compiled is the one reported in errors.
+ * <p>
+ * When a class directory is set, the classes generated by the optimizer are
+ * also written there and loaded back on a miss, so a restarted JVM doesn't
+ * have to compile the script again.  Interpreted scripts, with an
+ * optimization level of -1, are only cached in memory.
+ */
+public class ScriptCache {
+
+    private static final String CLASS_PREFIX = "js2j.cache.Script_";
+
+    private final int maxSize;
+    private final LinkedHashMap<String, Script> scripts;
+    private volatile File classDirectory;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long diskLoads;
+    private long compileNanos;
+
+    public ScriptCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.scripts = new LinkedHashMap<String, Script>(16, 0.75f, true) {
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = 4611935502740963306L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, Script> eldest) {
+                if (size() > ScriptCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Sets the directory where optimizer generated classes are persisted,
+     * or null to keep compiled scripts only in memory.
+     */
+    public void setClassDirectory(File dir) {
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalArgumentException("Unable to create class cache directory "+dir);
+        }
+        this.classDirectory = dir;
+    }
+
+    public File getClassDirectory() {
+        return classDirectory;
+    }
+
+    /**
+     * Gets the compiled script for the source, compiling it with the
+     * options of the passed Context on a miss.
+     */
+    public Script compile(Context cx, String source, String sourceName) {
+        String key = createKey(cx, source);
+        synchronized (this) {
+            Script script = scripts.get(key);
+            if (script != null) {
+                hits++;
+                return script;
+            }
+            misses++;
+        }
+
+        // Compile outside the lock, two threads may race but both get a valid script
+        long start = System.nanoTime();
+        Script script = null;
+        File dir = classDirectory;
+        if (dir != null && cx.getOptimizationLevel() >= 0) {
+            script = compileToClass(cx, dir, key, source, sourceName);
+        } else {
+            script = cx.compileString(source, sourceName, 1, null);
+        }
+        synchronized (this) {
+            compileNanos += System.nanoTime() - start;
+            scripts.put(key, script);
+        }
+        return script;
+    }
+
+    private Script compileToClass(Context cx, File dir, String key, String source, String sourceName) {
+        String className = CLASS_PREFIX + key.replace(':', '_').replace('-', 'm');
+        File classFile = new File(dir, className + ".class");
+        try {
+            byte[] bytes = null;
+            if (classFile.isFile()) {
+                bytes = readFile(classFile);
+                synchronized (this) {
+                    diskLoads++;
+                }
+            } else {
+                CompilerEnvirons env = new CompilerEnvirons();
+                env.initFromContext(cx);
+                Object[] classes = new ClassCompiler(env).compileToClassFiles(source, sourceName, 1, className);
+                if (classes.length != 2) {
+                    // Only scripts compiled to a single class are persisted
+                    return cx.compileString(source, sourceName, 1, null);
+                }
+                bytes = (byte[])classes[1];
+                writeFile(dir, classFile, bytes);
+            }
+            GeneratedClassLoader loader = cx.createClassLoader(cx.getApplicationClassLoader());
+            Class cls = loader.defineClass(className, bytes);
+            loader.linkClass(cls);
+            return (Script)cls.newInstance();
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to use class cache file "+classFile, ex);
+        } catch (InstantiationException ex) {
+            throw new RuntimeException("Unable to create script "+className, ex);
+        } catch (IllegalAccessException ex) {
+            throw new RuntimeException("Unable to create script "+className, ex);
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int)file.length());
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[4096];
+            int read = 0;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeFile(File dir, File file, byte[] bytes) throws IOException {
+        // Write to a temporary file first so readers never see a partial class
+        File tmp = File.createTempFile("script", ".tmp", dir);
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+    }
+
+    static String createKey(Context cx, String source) {
+        StringBuffer key = new StringBuffer();
+        try {
+            // The Rhino version goes into the digest, so classes compiled by
+            // another release, with another compiler, are never loaded
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(cx.getImplementationVersion().getBytes("UTF-8"));
+            md.update((byte)0);
+            byte[] digest = md.digest(source.getBytes("UTF-8"));
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16));
+                key.append(Character.forDigit(b & 0xF, 16));
+            }
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        key.append(':').append(cx.getOptimizationLevel());
+        key.append(':').append(cx.getLanguageVersion());
+        key.append(':').append(cx.isGeneratingDebug() ? 'd' : 'n');
+        key.append(':').append(cx.generateObserverCount ? 'o' : 'n');
+        return key.toString();
+    }
+
+    public synchronized void clear() {
+        scripts.clear();
+    }
+
+    public synchronized int size() {
+        return scripts.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of misses answered from the class directory
+     */
+    public synchronized long getDiskLoadCount() {
+        return diskLoads;
+    }
+
+    /**
+     * @return the total time spent compiling or loading scripts, in nanoseconds
+     */
+    public synchronized long getCompileNanos() {
+        return compileNanos;
+    }
+}
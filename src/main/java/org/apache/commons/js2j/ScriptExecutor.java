@@ -0,0 +1,456 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Runs script jobs concurrently on a pool of workers sharing one
+ * {@link SugarRuntime}.  Each worker thread owns its own Context, kept by
+ * the runtime's {@link SugarContextFactory}, and every job runs in a fresh
+ * scope over the runtime's sealed shared scope.
+ * <p>
+ * The number of queued and running jobs is bounded: once the queue is
+ * full, {@link #submit(SugarRuntime.ScopeAction)} blocks until a job
+ * completes and {@link #trySubmit(SugarRuntime.ScopeAction)} returns null.
+ * <p>
+ * For scripts that mostly wait on I/O, {@link #newVirtualThreadExecutor}
+ * runs every job on its own virtual thread instead of a fixed pool.
+ * <p>
+ * Jobs can be submitted on behalf of a tenant.  Free workers take the next
+ * job from each tenant with waiting jobs in turn, so one tenant flooding the
+ * queue doesn't starve the others.  With an {@link ExecutionBudget}, scripts
+ * that run too long are stopped.  A script that uses up its time slice while
+ * jobs are waiting hands its turn to the next one, which runs on a helper
+ * thread with its own Context and budget, and waits for a turn again behind
+ * any other waiting script.  No more scripts than there are workers run at
+ * once.
+ */
+public class ScriptExecutor {
+
+    private static final int LATENCY_SAMPLES = 4096;
+
+    private final SugarRuntime runtime;
+    private final ExecutorService workers;
+    private final Semaphore capacity;
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final LatencyRecorder latencies = new LatencyRecorder(LATENCY_SAMPLES);
+    private final long startNanos = System.nanoTime();
+    private final boolean virtualThreads;
+    private final Map<Object, LinkedList<Runnable>> pending = new HashMap<Object, LinkedList<Runnable>>();
+    private final LinkedList<Object> tenants = new LinkedList<Object>();
+    private final Semaphore turns;
+    private final ExecutorService helpers;
+    private final Runnable yieldToNext = new Runnable() {
+        public void run() {
+            final Runnable next = nextPending();
+            if (next == null) {
+                return;
+            }
+            // Hand this job's turn to the next one, on a thread of its own,
+            // then wait for a turn behind any other job already waiting
+            try {
+                helpers.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            next.run();
+                        } finally {
+                            turns.release();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // Shutting down, run it here under this job's turn
+                next.run();
+                return;
+            }
+            yields.incrementAndGet();
+            turns.acquireUninterruptibly();
+        }
+    };
+    private final AtomicLong yields = new AtomicLong();
+    private volatile ExecutionBudget executionBudget;
+
+    /**
+     * @param runtime the runtime whose shared scope jobs run against
+     * @param workerCount the number of worker threads
+     * @param queueCapacity the number of jobs that may wait for a worker
+     */
+    public ScriptExecutor(SugarRuntime runtime, int workerCount, int queueCapacity) {
+        this(runtime, new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory()), workerCount + queueCapacity);
+    }
+
+    protected ScriptExecutor(SugarRuntime runtime, ExecutorService workers, int maxInFlight) {
+        this(runtime, workers, maxInFlight, false);
+    }
+
+    private ScriptExecutor(SugarRuntime runtime, ExecutorService workers, int maxInFlight, boolean virtualThreads) {
+        this.runtime = runtime;
+        this.workers = workers;
+        this.capacity = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.turns = new Semaphore(workerCount(workers, maxInFlight), true);
+        this.virtualThreads = virtualThreads;
+        // A helper only ever runs a job taken off the queue, and a yielding
+        // job keeps its own thread, so no more than maxInFlight are needed
+        this.helpers = new ThreadPoolExecutor(0, maxInFlight, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new WorkerThreadFactory());
+    }
+
+    private static int workerCount(ExecutorService workers, int maxInFlight) {
+        if (workers instanceof ThreadPoolExecutor && ((ThreadPoolExecutor)workers).getMaximumPoolSize() < maxInFlight) {
+            return ((ThreadPoolExecutor)workers).getMaximumPoolSize();
+        }
+        return maxInFlight;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each job,
+     * with its own Context, so thousands of scripts blocked on I/O don't
+     * need thousands of platform threads.  On Java versions without virtual
+     * threads each job gets a new platform thread instead, see
+     * {@link #isVirtualThreads()}.
+     * @param maxInFlight the number of jobs that may be queued or running
+     */
+    public static ScriptExecutor newVirtualThreadExecutor(SugarRuntime runtime, int maxInFlight) {
+        ExecutorService workers = newVirtualThreadPerTaskExecutor();
+        boolean virtual = (workers != null);
+        if (!virtual) {
+            workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new WorkerThreadFactory());
+        }
+        return new ScriptExecutor(runtime, workers, maxInFlight, virtual);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            // Looked up reflectively, virtual threads need Java 21
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)factory.invoke(null);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (Exception ex) {
+            throw new IllegalStateException("Unable to create virtual thread executor", ex);
+        }
+    }
+
+    /**
+     * @return true if jobs run on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public SugarRuntime getRuntime() {
+        return runtime;
+    }
+
+    /**
+     * Sets the budget each job runs under, null to use the context factory's
+     * default budget.
+     */
+    public void setExecutionBudget(ExecutionBudget budget) {
+        this.executionBudget = budget;
+    }
+
+    public ExecutionBudget getExecutionBudget() {
+        return executionBudget;
+    }
+
+    /**
+     * Submits a script source, waiting for room in the queue if needed.
+     */
+    public Future<Object> submit(final String source, final String sourceName) throws InterruptedException {
+        return submit(sourceAction(source, sourceName));
+    }
+
+    /**
+     * Submits a job, waiting for room in the queue if needed.
+     */
+    public Future<Object> submit(SugarRuntime.ScopeAction action) throws InterruptedException {
+        return submit(null, action);
+    }
+
+    /**
+     * Submits a job for a tenant, waiting for room in the queue if needed.
+     * @param tenant the key jobs are scheduled fairly between, null for the
+     *        default tenant
+     */
+    public Future<Object> submit(Object tenant, SugarRuntime.ScopeAction action) throws InterruptedException {
+        capacity.acquire();
+        return dispatch(tenant, action);
+    }
+
+    /**
+     * Submits a job only if there is room in the queue.
+     * @return the job's future, or null if the queue is full
+     */
+    public Future<Object> trySubmit(SugarRuntime.ScopeAction action) {
+        if (!capacity.tryAcquire()) {
+            return null;
+        }
+        return dispatch(null, action);
+    }
+
+    /**
+     * Submits a batch of jobs that run one after another on the same worker,
+     * saving the hand-off between threads for each small job.  Waits until
+     * the whole batch fits in the queue.
+     * @throws IllegalArgumentException if the batch has more jobs than may
+     *         be queued or running at once, so it could never fit
+     */
+    public List<Future<Object>> submitBatch(List<SugarRuntime.ScopeAction> actions) throws InterruptedException {
+        if (actions.size() > maxInFlight) {
+            throw new IllegalArgumentException("Batch of " + actions.size()
+                    + " jobs is larger than the executor's capacity of " + maxInFlight);
+        }
+        capacity.acquire(actions.size());
+        inFlight.addAndGet(actions.size());
+        final List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(actions.size());
+        for (SugarRuntime.ScopeAction action : actions) {
+            tasks.add(createTask(action, System.nanoTime()));
+        }
+        Runnable batch = new Runnable() {
+            public void run() {
+                for (FutureTask<Object> task : tasks) {
+                    task.run();
+                }
+            }
+        };
+        try {
+            schedule(null, batch);
+        } catch (RuntimeException ex) {
+            capacity.release(actions.size());
+            inFlight.addAndGet(-actions.size());
+            throw ex;
+        }
+        return new ArrayList<Future<Object>>(tasks);
+    }
+
+    private Future<Object> dispatch(Object tenant, SugarRuntime.ScopeAction action) {
+        inFlight.incrementAndGet();
+        FutureTask<Object> task = createTask(action, System.nanoTime());
+        try {
+            schedule(tenant, task);
+        } catch (RuntimeException ex) {
+            capacity.release();
+            inFlight.decrementAndGet();
+            throw ex;
+        }
+        return task;
+    }
+
+    /**
+     * Queues the job under its tenant and hands the workers a runnable that
+     * runs whichever job is next in turn.  There is at least one such
+     * runnable for every queued job, a job already run by a yielding script
+     * just leaves one with nothing to do.
+     */
+    private void schedule(Object tenant, Runnable job) {
+        synchronized (pending) {
+            LinkedList<Runnable> jobs = pending.get(tenant);
+            if (jobs == null) {
+                jobs = new LinkedList<Runnable>();
+                pending.put(tenant, jobs);
+                tenants.addLast(tenant);
+            }
+            jobs.addLast(job);
+        }
+        try {
+            workers.execute(new Runnable() {
+                public void run() {
+                    Runnable next = nextPending();
+                    if (next != null) {
+                        turns.acquireUninterruptibly();
+                        try {
+                            next.run();
+                        } finally {
+                            turns.release();
+                        }
+                    }
+                }
+            });
+        } catch (RuntimeException ex) {
+            synchronized (pending) {
+                LinkedList<Runnable> jobs = pending.get(tenant);
+                if (jobs != null && jobs.remove(job) && jobs.isEmpty()) {
+                    pending.remove(tenant);
+                    tenants.remove(tenant);
+                }
+            }
+            throw ex;
+        }
+    }
+
+    private Runnable nextPending() {
+        synchronized (pending) {
+            if (tenants.isEmpty()) {
+                return null;
+            }
+            Object tenant = tenants.removeFirst();
+            LinkedList<Runnable> jobs = pending.get(tenant);
+            Runnable job = jobs.removeFirst();
+            if (jobs.isEmpty()) {
+                pending.remove(tenant);
+            } else {
+                tenants.addLast(tenant);
+            }
+            return job;
+        }
+    }
+
+    private FutureTask<Object> createTask(final SugarRuntime.ScopeAction action, final long submitted) {
+        return new ScriptTask(new Callable<Object>() {
+            public Object call() throws Exception {
+                running.incrementAndGet();
+                boolean ok = false;
+                try {
+                    ExecutionBudget budget = executionBudget;
+                    if (budget == null) {
+                        budget = runtime.getContextFactory().getExecutionBudget();
+                    }
+                    Object result = runtime.call(action, budget, yieldToNext);
+                    ok = true;
+                    return result;
+                } finally {
+                    running.decrementAndGet();
+                    (ok ? completed : failed).incrementAndGet();
+                    latencies.record(System.nanoTime() - submitted);
+                }
+            }
+        });
+    }
+
+    private SugarRuntime.ScopeAction sourceAction(final String source, final String sourceName) {
+        return new SugarRuntime.ScopeAction() {
+            public Object run(Context cx, Scriptable scope) {
+                return runtime.getScriptCache().compile(cx, source, sourceName).exec(cx, scope);
+            }
+        };
+    }
+
+    /**
+     * Stops accepting jobs once queued jobs have run.
+     */
+    public void shutdown() {
+        workers.shutdown();
+        helpers.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return workers.awaitTermination(timeout, unit)
+                && helpers.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of jobs waiting for a worker
+     */
+    public int getQueueDepth() {
+        return Math.max(0, inFlight.get() - running.get());
+    }
+
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of times a script used up its time slice and handed
+     *         its turn to a waiting job
+     */
+    public long getYieldCount() {
+        return yields.get();
+    }
+
+    /**
+     * @return the jobs finished per second since the executor was created
+     */
+    public double getThroughput() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return (completed.get() + failed.get()) / seconds;
+    }
+
+    /**
+     * Gets a latency percentile, from submission to completion, over the
+     * most recent jobs.
+     * @param percentile between 0 and 100, e.g. 99 for p99
+     * @return the latency in nanoseconds
+     */
+    public long getLatencyPercentile(double percentile) {
+        return latencies.getPercentile(percentile);
+    }
+
+    /**
+     * Gives the job's slot back when the job is done, however it got there:
+     * run, failed or cancelled while still queued.
+     */
+    private class ScriptTask extends FutureTask<Object> {
+        ScriptTask(Callable<Object> callable) {
+            super(callable);
+        }
+
+        protected void done() {
+            inFlight.decrementAndGet();
+            capacity.release();
+        }
+    }
+
+    static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "js2j-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
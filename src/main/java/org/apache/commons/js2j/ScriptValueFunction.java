@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ *  Extension function that returns numbers, strings and booleans to the
+ *  script as Javascript values rather than wrapped Java objects, so they
+ *  can be used in arithmetic and comparisons.
+ */
+abstract class ScriptValueFunction extends ExtensionFunction {
+
+    protected Object wrapResult(Context cx, Scriptable scope, Object o) {
+        if (o instanceof Number || o instanceof String || o instanceof Boolean) {
+            return o;
+        }
+        return super.wrapResult(cx, scope, o);
+    }
+}
@@ -17,17 +17,34 @@
 package org.apache.commons.js2j;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Vector;
 
+import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.Wrapper;
 
-/**  Wrap a java.util.List for JavaScript.  */
+/**  
+ * Wrap a java.util.List for JavaScript.  The list isn't copied: items are
+ * converted to script values as they are read and wrapped script values
+ * unwrapped as they are stored.  {@link NativeArrayList} is the view in the
+ * other direction.
+ */
 public class ScriptableList extends JavaObjectWrapper implements Scriptable, Wrapper, Serializable {
 
     /** Auto-generated serialization id */
     private static final long serialVersionUID = -2221655313388687110L;
+
+    /** Indexes below this share their boxed ids between every enumeration */
+    static final int SHARED_IDS = 65536;
+
+    private static volatile Object[] sharedIds = new Object[0];
+
     private List list;
 
 
@@ -55,52 +72,108 @@ public class ScriptableList extends JavaObjectWrapper implements Scriptable, Wra
     }
 
 
+    /**
+     * Only checks the index against the size, so it doesn't walk sequential
+     * lists such as LinkedList.
+     */
     public boolean has(int index, Scriptable start) {
-        // We catch the ArrayIndexOutOfBoundsException because the parser is probably trying to retrieve
-        // the value first(reading the statement left to right) then assign the value to that index... 
-        // or something like that.
-        try {
-            return (list.get(index) != null);
-        } catch (ArrayIndexOutOfBoundsException e) {
-            return false;
-        }
+        return (index >= 0 && index < list.size());
     }
 
 
     public Object get(int index, Scriptable start) {
-        return list.get(index);
+        if (index < 0 || index >= list.size()) {
+            return NOT_FOUND;
+        }
+        return Context.javaToJS(list.get(index), ScriptableObject.getTopLevelScope(start));
     }
 
 
+    /**
+     * Sets the item, growing the list with nulls first when the index is
+     * past the end, as assigning past the end of a script array does.
+     */
     public void put(int index, Scriptable start, Object value) {
-        int max = index + 1;
-        if (max > list.size()) {
-            for (int i = list.size(); i < index; i++) {
-                list.add(i, null);
-            }
-            list.add(index, value);
-        } else {
+        if (value instanceof Wrapper) {
+            value = ((Wrapper) value).unwrap();
+        }
+        int size = list.size();
+        if (index < size) {
             list.set(index, value);
+        } else {
+            if (index > size) {
+                pad(index - size, index + 1);
+            }
+            list.add(value);
         }
     }
 
 
+    /**
+     * Appends count nulls in one call.  Array backed lists get their
+     * capacity set first so the padding and the item that follows it
+     * are added without copying the array again; sequential lists just
+     * link the new nodes in one pass.
+     */
+    private void pad(int count, int capacity) {
+        if (list instanceof RandomAccess) {
+            if (list instanceof ArrayList) {
+                ((ArrayList) list).ensureCapacity(capacity);
+            } else if (list instanceof Vector) {
+                ((Vector) list).ensureCapacity(capacity);
+            }
+        }
+        list.addAll(Collections.nCopies(count, null));
+    }
+
+
     public void delete(int index) {
-        list.remove(index);
+        if (index >= 0 && index < list.size()) {
+            list.remove(index);
+        }
     }
 
 
     public Object[] getIds() {
+        return indexIds(list.size());
+    }
+
 
-        //TODO: optimize this :)
-        Integer[] ids = new Integer[list.size()];
-        for (int x = 0; x < ids.length; x++) {
-            ids[x] = new Integer(x);
+    /**
+     * @return the ids of a list of the given size.  Rhino 1.7R2 enumerates
+     *         through this array, so it can't be avoided, but the boxed
+     *         indexes in it are shared rather than created for every loop.
+     */
+    static Object[] indexIds(int size) {
+        Object[] ids = new Object[size];
+        Object[] shared = sharedIds;
+        if (shared.length < Math.min(size, SHARED_IDS)) {
+            shared = growSharedIds(Math.min(size, SHARED_IDS));
+        }
+        int count = Math.min(size, shared.length);
+        System.arraycopy(shared, 0, ids, 0, count);
+        for (int x = count; x < size; x++) {
+            ids[x] = Integer.valueOf(x);
         }
         return ids;
     }
 
 
+    private static synchronized Object[] growSharedIds(int size) {
+        Object[] shared = sharedIds;
+        if (shared.length < size) {
+            Object[] grown = new Object[Math.min(SHARED_IDS, Math.max(size, shared.length * 2))];
+            System.arraycopy(shared, 0, grown, 0, shared.length);
+            for (int x = shared.length; x < grown.length; x++) {
+                grown[x] = Integer.valueOf(x);
+            }
+            sharedIds = grown;
+            shared = grown;
+        }
+        return shared;
+    }
+
+
     public Object unwrap() {
         return this.list;
     }
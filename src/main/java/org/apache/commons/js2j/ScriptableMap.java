@@ -17,7 +17,10 @@
 package org.apache.commons.js2j;
 
 import java.io.Serializable;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 import org.mozilla.javascript.NativeJavaObject;
 import org.mozilla.javascript.Scriptable;
@@ -31,6 +34,25 @@ public class ScriptableMap extends JavaObjectWrapper implements Scriptable, Wrap
     /** Auto-generated serialization id */
     private static final long serialVersionUID = 7192070806139403748L;
     private Map map;
+    private transient Set memberNames;
+
+    /**
+     * Names of the Java members of each map class, by the static type it was
+     * wrapped as, so telling a member from a key doesn't have to ask Rhino.
+     * The outer ClassValue is keyed by the static type and the inner one by
+     * the map class.  ClassValue keeps each value with its class and only
+     * names are stored, so neither class is kept reachable by the other and
+     * an application's map classes can still be unloaded.
+     */
+    private static final ClassValue<ClassValue<MemberNames>> MEMBER_NAMES = new ClassValue<ClassValue<MemberNames>>() {
+        protected ClassValue<MemberNames> computeValue(Class<?> staticType) {
+            return new ClassValue<MemberNames>() {
+                protected MemberNames computeValue(Class<?> mapClass) {
+                    return new MemberNames();
+                }
+            };
+        }
+    };
 
     public ScriptableMap() {
         super();
@@ -54,38 +76,135 @@ public class ScriptableMap extends JavaObjectWrapper implements Scriptable, Wrap
     }
 
     public boolean has(String name, Scriptable start) {
-        return (super.has(name, start) || this.map.containsKey(name));
+        return (isMember(name) || containsKey(name));
     }
 
     /**
-     * no numeric properties
+     * Numeric properties look up the key in its string form, or failing
+     * that as an Integer or a Double, so maps keyed by Java ints or by
+     * script numbers can be indexed too.  Keys of other number types, such
+     * as Long, are not found this way.
      */
     public boolean has(int index, Scriptable start) {
-        return false;
+        return (indexKey(index) != null);
+    }
+
+    /**
+     * @return the key a numeric property names in the map, or null if
+     *         there is none
+     */
+    private Object indexKey(int index) {
+        String key = String.valueOf(index);
+        if (containsKey(key)) {
+            return key;
+        }
+        Object number = Integer.valueOf(index);
+        if (containsKey(number)) {
+            return number;
+        }
+        number = Double.valueOf(index);
+        return (containsKey(number) ? number : null);
     }
 
+    /**
+     * Sorted maps reject keys of another type than theirs rather than just
+     * not find them.
+     */
+    private boolean containsKey(Object key) {
+        try {
+            return this.map.containsKey(key);
+        } catch (ClassCastException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Java members and extension functions win over keys of the same name.
+     * Anything else is read from the map with a single get, only asking
+     * containsKey when that returns null, to tell a null value from a
+     * missing key.
+     */
     public Object get(String name, Scriptable start) {
-        if (super.has(name, start)) {
+        if (isMember(name)) {
             return super.get(name, start);
-        } else if (this.map.containsKey(name)) {
-            return this.map.get(name);
-        } else {
+        }
+        Object value;
+        try {
+            value = this.map.get(name);
+        } catch (ClassCastException ex) {
+            return Scriptable.NOT_FOUND;
+        }
+        if (value == null && !this.map.containsKey(name)) {
             return Scriptable.NOT_FOUND;
         }
+        return value;
+    }
+
+    /**
+     * @return true if the name is an extension or a Java member of the map,
+     *         rather than a key
+     */
+    private boolean isMember(String name) {
+        Set names = memberNames;
+        if (names == null) {
+            names = getMemberNames();
+            memberNames = names;
+        }
+        // Explicit overload signatures, such as "put(java.lang.Object,java.lang.Object)", aren't ids
+        return (names.contains(name) || hasExtension(name)
+                || (name.indexOf('(') > -1 && super.has(name, this)));
+    }
+
+    private Set getMemberNames() {
+        Class type = (staticType == null ? map.getClass() : staticType);
+        MemberNames holder = MEMBER_NAMES.get(type).get(map.getClass());
+        Set names = holder.names;
+        if (names == null) {
+            names = new HashSet();
+            Object[] ids = super.getIds();
+            for (int x = 0; x < ids.length; x++) {
+                names.add(String.valueOf(ids[x]));
+            }
+            holder.names = names;
+        }
+        return names;
+    }
+
+    private static class MemberNames {
+        volatile Set names;
     }
 
     public Object get(int index, Scriptable start) {
+        Object key = indexKey(index);
+        if (key != null) {
+            return this.map.get(key);
+        }
         return NOT_FOUND;
     }
 
     public void put(String name, Scriptable start, Object value) {
+        putKey(name, value);
+    }
+
+    private void putKey(Object key, Object value) {
         if (value instanceof NativeJavaObject) {
             value = ((NativeJavaObject)value).unwrap();
         }
-        map.put(name, value);
+        if (value == null && map instanceof ConcurrentMap) {
+            // Concurrent maps can't hold nulls, treat it as removing the key
+            map.remove(key);
+        } else {
+            map.put(key, value);
+        }
     }
 
+    /**
+     * Stores under the key already there for the index, otherwise under
+     * its string form.
+     */
     public void put(int index, Scriptable start, Object value) {
+        Object key = indexKey(index);
+        putKey(key != null ? key : String.valueOf(index), value);
     }
 
     public void delete(String id) {
@@ -93,6 +212,10 @@ public class ScriptableMap extends JavaObjectWrapper implements Scriptable, Wrap
     }
 
     public void delete(int index) {
+        Object key = indexKey(index);
+        if (key != null) {
+            map.remove(key);
+        }
     }
 
     public Scriptable getPrototype() {
@@ -111,6 +234,9 @@ public class ScriptableMap extends JavaObjectWrapper implements Scriptable, Wrap
         this.parent = parent;
     }
 
+    /**
+     * A copy of the keys, so a for-in loop can delete keys as it goes
+     */
     public Object[] getIds() {
         return this.map.keySet().toArray();
     }
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.Wrapper;
+
+/**  
+ * Wrap a Java int[], long[], double[] or byte[] array for JavaScript.  Unlike
+ * Rhino's own array wrapper it gets extension functions, and indexed reads
+ * and writes convert straight between script numbers and the primitive
+ * elements.  The wrapper unwraps to the array itself, so it can be passed
+ * back to Java methods, while extensions are handed its
+ * {@link PrimitiveArrayList} view.
+ */
+public class ScriptablePrimitiveArray extends JavaObjectWrapper implements Scriptable, Wrapper, Serializable {
+
+    /** Auto-generated serialization id */
+    private static final long serialVersionUID = -1478350207381154625L;
+    private PrimitiveArrayList list;
+
+
+    public ScriptablePrimitiveArray() {
+    }
+
+
+    public ScriptablePrimitiveArray(Scriptable scope, Object javaObject, Class staticType, Map funcs) {
+        super(scope, javaObject, staticType, funcs);
+        this.list = PrimitiveArrayList.of(javaObject);
+        if (list == null) {
+            throw new IllegalArgumentException("Passed object " + javaObject + " is not an int, long, double or byte array");
+        }
+    }
+
+
+    public String getClassName() {
+        return "JavaArray";
+    }
+
+
+    public boolean has(String name, Scriptable start) {
+        return ("length".equals(name) || super.has(name, start));
+    }
+
+
+    public Object get(String name, Scriptable start) {
+        if ("length".equals(name)) {
+            return Integer.valueOf(list.size());
+        }
+        return super.get(name, start);
+    }
+
+
+    public boolean has(int index, Scriptable start) {
+        return (index >= 0 && index < list.size());
+    }
+
+
+    public Object get(int index, Scriptable start) {
+        if (index < 0 || index >= list.size()) {
+            return NOT_FOUND;
+        }
+        return list.getValue(index);
+    }
+
+
+    /**
+     * Writes outside the array are a script error, as for Rhino's own Java
+     * arrays.
+     */
+    public void put(int index, Scriptable start, Object value) {
+        if (index < 0 || index >= list.size()) {
+            throw Context.reportRuntimeError(ScriptRuntime.getMessage2("msg.java.array.index.out.of.bounds",
+                    String.valueOf(index), String.valueOf(list.size() - 1)));
+        }
+        list.putValue(index, value);
+    }
+
+
+    public Object[] getIds() {
+        return ScriptableList.indexIds(list.size());
+    }
+
+
+    Object getExtensionTarget() {
+        return list;
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.Wrapper;
+
+/**  
+ * Wrap a {@link PrimitiveList} for JavaScript.  Indexed reads and writes go
+ * straight to the primitive array, converting to and from script numbers,
+ * so storing a value doesn't keep a boxed copy.
+ */
+public class ScriptablePrimitiveList extends ScriptableList implements Scriptable, Wrapper, Serializable {
+
+    /** Auto-generated serialization id */
+    private static final long serialVersionUID = 3620788741152957734L;
+    private PrimitiveList list;
+
+
+    public ScriptablePrimitiveList() {
+    }
+
+
+    public ScriptablePrimitiveList(Scriptable scope, Object javaObject, Class staticType, Map funcs) {
+        super(scope, javaObject, staticType, funcs);
+        this.list = (PrimitiveList) javaObject;
+    }
+
+
+    public boolean has(int index, Scriptable start) {
+        return (index >= 0 && index < list.size());
+    }
+
+
+    public Object get(int index, Scriptable start) {
+        if (index < 0 || index >= list.size()) {
+            return NOT_FOUND;
+        }
+        return list.getValue(index);
+    }
+
+
+    public void put(int index, Scriptable start, Object value) {
+        list.putValue(index, value);
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+
+/**
+ * Searches of sorted lists.  Values compare in the order of
+ * {@link #compare(Object, Object)}, so numbers compare by value whatever
+ * their type and a script number finds an Integer in the list.  Searches
+ * take O(log n) comparisons on random access lists; bounds on other lists,
+ * which can't be indexed cheaply, scan in O(n) instead.
+ */
+class SortedLists {
+
+    private static final int NULL_RANK = 0;
+    private static final int NUMBER_RANK = 1;
+    private static final int STRING_RANK = 2;
+    private static final int OTHER_RANK = 3;
+
+    private SortedLists() {
+    }
+
+    /**
+     * Like Collections.binarySearch, with the element's key taken from the
+     * key function if there is one.
+     */
+    static int binarySearch(Context cx, List list, Object value, Function key) {
+        return Collections.binarySearch(list, unwrap(value), new KeyComparator(cx, key));
+    }
+
+    /**
+     * @param inclusive true for the first index whose key is not less than
+     *        the value, false for the first whose key is greater
+     */
+    static int bound(Context cx, List list, Object value, Function key, boolean inclusive) {
+        Comparator comp = new KeyComparator(cx, key);
+        value = unwrap(value);
+        if (list instanceof RandomAccess) {
+            int low = 0;
+            int high = list.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int result = comp.compare(list.get(middle), value);
+                if (result < 0 || (!inclusive && result == 0)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+        int index = 0;
+        for (Iterator i = list.iterator(); i.hasNext(); index++) {
+            int result = comp.compare(i.next(), value);
+            if (result > 0 || (inclusive && result == 0)) {
+                break;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Compares any two values, so keys of mixed types can be sorted:
+     * nulls first, then numbers by value whatever their type, then strings,
+     * then everything else grouped by class name.  Values of the same
+     * class compare by their natural order if they have one, otherwise by
+     * their string form.
+     */
+    static int compare(Object o1, Object o2) {
+        int rank1 = rank(o1);
+        int rank2 = rank(o2);
+        if (rank1 != rank2) {
+            return (rank1 < rank2 ? -1 : 1);
+        }
+        switch (rank1) {
+            case NULL_RANK:
+                return 0;
+            case NUMBER_RANK:
+                return Double.compare(((Number)o1).doubleValue(), ((Number)o2).doubleValue());
+            case STRING_RANK:
+                return ((String)o1).compareTo((String)o2);
+            default:
+                Class type = o1.getClass();
+                if (type != o2.getClass()) {
+                    return type.getName().compareTo(o2.getClass().getName());
+                }
+                if (o1 instanceof Comparable) {
+                    return ((Comparable)o1).compareTo(o2);
+                }
+                return o1.toString().compareTo(o2.toString());
+        }
+    }
+
+    private static int rank(Object value) {
+        if (value == null) {
+            return NULL_RANK;
+        } else if (value instanceof Number) {
+            return NUMBER_RANK;
+        } else if (value instanceof String) {
+            return STRING_RANK;
+        }
+        return OTHER_RANK;
+    }
+
+    private static Object unwrap(Object value) {
+        if (value instanceof Wrapper) {
+            value = ((Wrapper)value).unwrap();
+        }
+        return (value instanceof Undefined ? null : value);
+    }
+
+    /**
+     * Compares a list element, through the key function if there is one,
+     * with a plain search value.
+     */
+    private static class KeyComparator implements Comparator {
+        private final Context cx;
+        private final Function key;
+        private final Scriptable scope;
+        private final Object[] param = new Object[1];
+
+        KeyComparator(Context cx, Function key) {
+            this.cx = cx;
+            this.key = key;
+            this.scope = (key == null ? null : ScriptableObject.getTopLevelScope(key));
+        }
+
+        public int compare(Object element, Object value) {
+            if (key != null) {
+                param[0] = element;
+                element = key.call(cx, scope, scope, param);
+            }
+            return SortedLists.compare(unwrap(element), value);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ *  Function extension that reads its target from <tt>thisObj</tt> on every
+ *  call instead of holding it, so one instance serves every wrapper and
+ *  calling it allocates nothing.  A factory method returning one of these,
+ *  rather than a new {@link ExtensionFunction}, has it shared by every
+ *  wrapper of the class.
+ */
+public abstract class StatelessExtensionFunction extends ExtensionFunction {
+
+    private final boolean scriptValues;
+
+    protected StatelessExtensionFunction() {
+        this(false);
+    }
+
+    /**
+     * @param scriptValues true to return numbers, strings and booleans as
+     *        Javascript values, as {@link ScriptValueFunction} does
+     */
+    protected StatelessExtensionFunction(boolean scriptValues) {
+        this.scriptValues = scriptValues;
+        sealObject();
+    }
+
+    public Object call(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) {
+        try {
+            unwrapArgs(args);
+            Object target = JavaObjectWrapper.extensionTargetOf(thisObj);
+            Object o = execute(cx, scope, thisObj, target, args);
+            if (o != null && o == target) {
+                return thisObj;
+            }
+            return wrapResult(cx, scope, o);
+        } catch (Exception ex) {
+            throw Context.throwAsScriptRuntimeEx(ex);
+        }
+    }
+
+    protected Object wrapResult(Context cx, Scriptable scope, Object o) {
+        if (scriptValues && (o instanceof Number || o instanceof String || o instanceof Boolean)) {
+            return o;
+        }
+        return super.wrapResult(cx, scope, o);
+    }
+
+    public Object execute(Context cx, Scriptable scope, Scriptable thisObj, java.lang.Object[] args) throws Exception {
+        return execute(cx, scope, thisObj, JavaObjectWrapper.extensionTargetOf(thisObj), args);
+    }
+
+    /**
+     *  Runs the function on the target, the Java object <tt>thisObj</tt>
+     *  wraps, or the view of it the wrapper gives extensions.
+     */
+    public abstract Object execute(Context cx, Scriptable scope, Scriptable thisObj, Object target, java.lang.Object[] args) throws Exception;
+
+    public void setTarget(Object target) {
+        throw new UnsupportedOperationException("Stateless functions take their target from thisObj");
+    }
+
+    public void setWrapper(Scriptable wrapper) {
+        throw new UnsupportedOperationException("Stateless functions take their target from thisObj");
+    }
+}
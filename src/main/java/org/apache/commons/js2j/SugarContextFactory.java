@@ -4,17 +4,156 @@ import org.mozilla.javascript.ContextFactory;
 import org.mozilla.javascript.Context;
 
 /**
- *
+ * Context factory that sets up Contexts with the js2j wrap factory.  It also
+ * enforces {@link ExecutionBudget}s on executions started with
+ * {@link #enterBudget(Context, ExecutionBudget, Runnable)}, checking them
+ * from {@link #observeInstructionCount(Context, int)}.
  */
 public class SugarContextFactory extends ContextFactory
 {
+    private static final Object BUDGET_KEY = new Object();
+
     private final SugarWrapFactory wrapFactory;
+    private volatile ExecutionBudget executionBudget;
+    private final ThreadLocal<Context> threadContexts = new ThreadLocal<Context>();
+
+    public SugarContextFactory()
+    {
+        this(new SugarWrapFactory());
+    }
 
     public SugarContextFactory(SugarWrapFactory wrapFactory)
     {
         this.wrapFactory = wrapFactory;
     }
 
+    public SugarWrapFactory getWrapFactory()
+    {
+        return wrapFactory;
+    }
+
+    /**
+     * Sets the maximum number of wrappers cached per top-level scope, zero
+     * to disable the cache.
+     * @see SugarWrapFactory#setWrapperCacheSize(int)
+     */
+    public void setWrapperCacheSize(int size)
+    {
+        wrapFactory.setWrapperCacheSize(size);
+    }
+
+    /**
+     * Sets the budget applied to executions that don't specify their own,
+     * null for none.
+     */
+    public void setExecutionBudget(ExecutionBudget budget)
+    {
+        this.executionBudget = budget;
+    }
+
+    public ExecutionBudget getExecutionBudget()
+    {
+        return executionBudget;
+    }
+
+    /**
+     * Enters the Context kept for the current thread, creating it on first
+     * use, so repeated executions on a thread don't pay for a new Context.
+     * As with {@link #enterContext()}, each call must be matched by
+     * {@link Context#exit()}.
+     */
+    public Context enterThreadContext()
+    {
+        if (Context.getCurrentContext() != null) {
+            return enterContext();
+        }
+        Context cx = threadContexts.get();
+        if (cx == null) {
+            cx = enterContext();
+            threadContexts.set(cx);
+            return cx;
+        }
+        return enterContext(cx);
+    }
+
+    /**
+     * Forgets the Context kept for the current thread, if any.
+     */
+    public void releaseThreadContext()
+    {
+        threadContexts.remove();
+    }
+
+    /**
+     * Starts enforcing a budget on the execution about to run on the entered
+     * Context.  Budgets nest: an execution started while another is running
+     * gets its own budget, and never yields.  Each call must be matched by
+     * {@link #exitBudget(Context)}.
+     * @param onYield run each time the execution uses up a time slice, may
+     *        be null
+     */
+    public void enterBudget(Context cx, ExecutionBudget budget, Runnable onYield)
+    {
+        BudgetState previous = (BudgetState)cx.getThreadLocal(BUDGET_KEY);
+        BudgetState state = new BudgetState(budget, previous == null ? onYield : null,
+                previous, cx.getInstructionObserverThreshold());
+        cx.putThreadLocal(BUDGET_KEY, state);
+        cx.setInstructionObserverThreshold(budget.getCheckInterval());
+    }
+
+    /**
+     * Stops enforcing the budget started by the last
+     * {@link #enterBudget(Context, ExecutionBudget, Runnable)}.
+     */
+    public void exitBudget(Context cx)
+    {
+        BudgetState state = (BudgetState)cx.getThreadLocal(BUDGET_KEY);
+        if (state == null) {
+            return;
+        }
+        cx.setInstructionObserverThreshold(state.previousThreshold);
+        if (state.previous == null) {
+            cx.removeThreadLocal(BUDGET_KEY);
+        } else {
+            cx.putThreadLocal(BUDGET_KEY, state.previous);
+        }
+    }
+
+    /**
+     * @return the budget of the execution running on the Context, for
+     *         {@link #enterSharedBudget(Context, Object)}, or null if there
+     *         is none
+     */
+    Object getBudgetState(Context cx)
+    {
+        return cx.getThreadLocal(BUDGET_KEY);
+    }
+
+    /**
+     * Counts the work about to run on the entered Context, on another thread,
+     * against the budget of an execution from
+     * {@link #getBudgetState(Context)}, so work split across a pool is held
+     * to the caller's limits.  It never yields.  Must be matched by
+     * {@link #exitBudget(Context)}.
+     */
+    void enterSharedBudget(Context cx, Object budgetState)
+    {
+        BudgetState owner = (BudgetState)budgetState;
+        BudgetState state = new BudgetState(owner, (BudgetState)cx.getThreadLocal(BUDGET_KEY),
+                cx.getInstructionObserverThreshold());
+        cx.putThreadLocal(BUDGET_KEY, state);
+        cx.setInstructionObserverThreshold(owner.budget.getCheckInterval());
+    }
+
+    @Override
+    protected void observeInstructionCount(Context cx, int instructionCount)
+    {
+        BudgetState state = (BudgetState)cx.getThreadLocal(BUDGET_KEY);
+        if (state != null) {
+            state.observe(instructionCount);
+        }
+    }
+
     @Override
     protected Context makeContext()
     {
@@ -22,4 +161,74 @@ public class SugarContextFactory extends ContextFactory
         context.setWrapFactory(wrapFactory);
         return context;
     }
+
+    /**
+     * Progress of one execution against its budget.  Time spent yielding
+     * doesn't count against the wall-clock budget.  A state entered with
+     * {@link #enterSharedBudget(Context, Object)} adds its work to the
+     * owning execution's totals, which are guarded by the owner's lock.
+     */
+    private static class BudgetState
+    {
+        final ExecutionBudget budget;
+        final Runnable onYield;
+        final BudgetState owner;
+        final BudgetState previous;
+        final int previousThreshold;
+        final long start;
+        long instructions;
+        long yieldedNanos;
+        long sliceEnd;
+
+        BudgetState(ExecutionBudget budget, Runnable onYield, BudgetState previous, int previousThreshold)
+        {
+            this.budget = budget;
+            this.onYield = onYield;
+            this.owner = this;
+            this.previous = previous;
+            this.previousThreshold = previousThreshold;
+            this.start = System.nanoTime();
+            this.sliceEnd = start + budget.getSliceMillis() * 1000000L;
+        }
+
+        BudgetState(BudgetState owner, BudgetState previous, int previousThreshold)
+        {
+            this.budget = owner.budget;
+            this.onYield = null;
+            this.owner = owner;
+            this.previous = previous;
+            this.previousThreshold = previousThreshold;
+            this.start = owner.start;
+        }
+
+        void observe(int instructionCount)
+        {
+            long now = System.nanoTime();
+            long instructions;
+            long elapsedMillis;
+            synchronized (owner) {
+                instructions = (owner.instructions += instructionCount);
+                elapsedMillis = (now - start - owner.yieldedNanos) / 1000000L;
+            }
+            if (budget.getMaxInstructions() > 0 && instructions > budget.getMaxInstructions()) {
+                throw new ExecutionBudgetExceededError("Script exceeded its budget of "
+                        + budget.getMaxInstructions() + " instructions", instructions, elapsedMillis);
+            }
+            if (budget.getMaxMillis() > 0 && elapsedMillis > budget.getMaxMillis()) {
+                throw new ExecutionBudgetExceededError("Script exceeded its time budget of "
+                        + budget.getMaxMillis() + " ms", instructions, elapsedMillis);
+            }
+            if (onYield != null && budget.getSliceMillis() > 0 && now >= sliceEnd) {
+                try {
+                    onYield.run();
+                } finally {
+                    long resumed = System.nanoTime();
+                    synchronized (owner) {
+                        yieldedNanos += resumed - now;
+                    }
+                    sliceEnd = resumed + budget.getSliceMillis() * 1000000L;
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Runs many small scripts against one sealed, shared top-level scope.  The
+ * standard objects are initialized once when the runtime is created.  Each
+ * execution then gets a cheap child scope, whose prototype is the shared
+ * scope, on the Context kept for the current thread by the
+ * {@link SugarContextFactory}.  Variables a script defines stay in its own
+ * scope.  Sources are compiled through a {@link ScriptCache} so the same
+ * source is only compiled once.
+ */
+public class SugarRuntime {
+
+    /**
+     * Code run by the runtime with an entered Context and a fresh execution
+     * scope.
+     */
+    public interface ScopeAction {
+        Object run(Context cx, Scriptable scope) throws Exception;
+    }
+
+    /** Number of compiled scripts kept by default */
+    public static final int DEFAULT_SCRIPT_CACHE_SIZE = 256;
+
+    private final SugarContextFactory factory;
+    private final ScriptCache scriptCache;
+    private final ScriptableObject sharedScope;
+    private final long startupNanos;
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public SugarRuntime() {
+        this(new SugarContextFactory());
+    }
+
+    public SugarRuntime(SugarContextFactory factory) {
+        this(factory, new ScriptCache(DEFAULT_SCRIPT_CACHE_SIZE));
+    }
+
+    public SugarRuntime(SugarContextFactory factory, ScriptCache scriptCache) {
+        long start = System.nanoTime();
+        this.factory = factory;
+        this.scriptCache = scriptCache;
+        Context cx = factory.enterThreadContext();
+        try {
+            sharedScope = cx.initStandardObjects(null, true);
+        } finally {
+            Context.exit();
+        }
+        startupNanos = System.nanoTime() - start;
+    }
+
+    public SugarContextFactory getContextFactory() {
+        return factory;
+    }
+
+    public ScriptCache getScriptCache() {
+        return scriptCache;
+    }
+
+    /**
+     * @return the sealed scope shared by all executions
+     */
+    public ScriptableObject getSharedScope() {
+        return sharedScope;
+    }
+
+    /**
+     * Creates a new execution scope backed by the shared scope.
+     */
+    public Scriptable newScope(Context cx) {
+        Scriptable scope = cx.newObject(sharedScope);
+        scope.setPrototype(sharedScope);
+        scope.setParentScope(null);
+        return scope;
+    }
+
+    /**
+     * Evaluates the source in a new execution scope, compiling it through
+     * the script cache.
+     */
+    public Object evaluateString(final String source, final String sourceName) {
+        return callUnchecked(new ScopeAction() {
+            public Object run(Context cx, Scriptable scope) {
+                return scriptCache.compile(cx, source, sourceName).exec(cx, scope);
+            }
+        });
+    }
+
+    /**
+     * Evaluates the script read from the reader in a new execution scope.
+     */
+    public Object evaluateReader(Reader in, String sourceName) throws IOException {
+        StringBuffer source = new StringBuffer();
+        char[] charBuffer = new char[4096];
+        int nbCharRead = 0;
+        while ((nbCharRead = in.read(charBuffer)) != -1) {
+            source.append(charBuffer, 0, nbCharRead);
+        }
+        return evaluateString(source.toString(), sourceName);
+    }
+
+    /**
+     * Compiles the source through the script cache, using the options of the
+     * thread's Context.  The script is always compiled to count the
+     * instructions it runs, so an {@link ExecutionBudget} set after it was
+     * compiled still applies to it.  Scripts compiled straight through a
+     * {@link ScriptCache} only count instructions if the Context had an
+     * instruction observer threshold at the time.
+     */
+    public Script compile(String source, String sourceName) {
+        Context cx = factory.enterThreadContext();
+        boolean counting = cx.generateObserverCount;
+        try {
+            cx.setGenerateObserverCount(true);
+            return scriptCache.compile(cx, source, sourceName);
+        } finally {
+            cx.setGenerateObserverCount(counting);
+            Context.exit();
+        }
+    }
+
+    /**
+     * Executes a compiled script in a new execution scope.
+     */
+    public Object exec(final Script script) {
+        return callUnchecked(new ScopeAction() {
+            public Object run(Context cx, Scriptable scope) {
+                return script.exec(cx, scope);
+            }
+        });
+    }
+
+    /**
+     * Runs the action with the thread's Context entered and a new execution
+     * scope, recording its latency.  The context factory's execution budget,
+     * if any, applies.
+     */
+    public Object call(ScopeAction action) throws Exception {
+        return call(action, factory.getExecutionBudget(), null);
+    }
+
+    /**
+     * Runs the action under the given budget.
+     * @param budget the limits to enforce, null for none
+     * @param onYield run each time the action uses up a time slice of the
+     *        budget, may be null
+     * @throws ExecutionBudgetExceededError if the action runs past its budget
+     */
+    public Object call(ScopeAction action, ExecutionBudget budget, Runnable onYield) throws Exception {
+        long start = System.nanoTime();
+        Context cx = factory.enterThreadContext();
+        try {
+            if (budget == null) {
+                return action.run(cx, newScope(cx));
+            }
+            factory.enterBudget(cx, budget, onYield);
+            try {
+                return action.run(cx, newScope(cx));
+            } finally {
+                factory.exitBudget(cx);
+            }
+        } finally {
+            Context.exit();
+            recordExecution(System.nanoTime() - start);
+        }
+    }
+
+    private Object callUnchecked(ScopeAction action) {
+        try {
+            return call(action);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw Context.throwAsScriptRuntimeEx(ex);
+        }
+    }
+
+    private void recordExecution(long nanos) {
+        executions.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * @return how long building the shared scope took, in nanoseconds
+     */
+    public long getStartupNanos() {
+        return startupNanos;
+    }
+
+    public long getExecutionCount() {
+        return executions.get();
+    }
+
+    public long getTotalExecutionNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxExecutionNanos() {
+        return maxNanos.get();
+    }
+
+    public long getAverageExecutionNanos() {
+        long count = executions.get();
+        return (count == 0 ? 0 : totalNanos.get() / count);
+    }
+}
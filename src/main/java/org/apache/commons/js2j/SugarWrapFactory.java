@@ -17,9 +17,8 @@
 package org.apache.commons.js2j;
 
 import java.io.FileReader;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ImporterTopLevel;
@@ -32,42 +31,25 @@ import org.mozilla.javascript.WrapFactory;
  */
 public class SugarWrapFactory extends WrapFactory {
     
-    private final List<ExtensionEntry> functionRegistry;
+    private final ExtensionRegistry registry;
+    private final AtomicLong wrapCount = new AtomicLong();
+    private final AtomicLong wrapperCacheHits = new AtomicLong();
+    private final AtomicLong wrapperCacheMisses = new AtomicLong();
+    private final AtomicLong wrapperCacheEvictions = new AtomicLong();
+    private volatile int wrapperCacheSize = 0;
 
     public SugarWrapFactory() {
-        this(Collections.<Class>emptyList());
+        this(ExtensionRegistry.getDefault());
     }
-    public SugarWrapFactory(List<Class> extensionClasses) {
-        super();
-
-        List<ExtensionEntry> entries = new ArrayList<ExtensionEntry>();
-        // Add default methods
-        entries.addAll(addExtensionFunctions(CollectionExtensions.class));
-        entries.addAll(addExtensionFunctions(ListExtensions.class));
-        entries.addAll(addExtensionFunctions(FileExtensions.class));
-        entries.addAll(addExtensionFunctions(PropertiesExtensions.class));
-        entries.addAll(addExtensionFunctions(InputStreamExtensions.class));
-
-        for (Class cls : extensionClasses)
-        {
-            entries.addAll(addExtensionFunctions(cls));
-        }
 
-        functionRegistry = Collections.unmodifiableList(entries);
+    public SugarWrapFactory(List<Class> extensionClasses) {
+        this(extensionClasses.isEmpty() ? ExtensionRegistry.getDefault()
+                : new ExtensionRegistry(ExtensionRegistry.getDefault(), extensionClasses));
     }
-    
-    private List<ExtensionEntry> addExtensionFunctions(Class holder) {
-        List<ExtensionEntry> registry = new ArrayList<ExtensionEntry>();
-        for (Method method : holder.getDeclaredMethods()) {
-            int modifier = method.getModifiers();
-            if (Modifier.isStatic(modifier) && Modifier.isPublic(modifier)) {
-                String name = method.getName();
-                Class target = method.getParameterTypes()[0];
-                ExtensionEntry entry = new ExtensionEntry(target, name, method);
-                registry.add(entry);
-            }
-        }
-        return registry;
+
+    public SugarWrapFactory(ExtensionRegistry registry) {
+        super();
+        this.registry = registry;
     }
 
     /**
@@ -88,10 +70,26 @@ public class SugarWrapFactory extends WrapFactory {
     public Scriptable wrapAsJavaObject(Context cx, Scriptable scope,
         Object javaObject, Class staticType) {
 
-        Map map = getExtensionFunctions(javaObject.getClass());
+        wrapCount.incrementAndGet();
+        WrapperCache cache = getWrapperCache(scope, javaObject);
+        if (cache != null) {
+            Scriptable cached = cache.get(javaObject, staticType);
+            if (cached != null) {
+                wrapperCacheHits.incrementAndGet();
+                return cached;
+            }
+            wrapperCacheMisses.incrementAndGet();
+        }
+
+        // Primitive arrays get the extensions of the list view they are called on
+        Map map = getExtensionFunctions(isPrimitiveArray(javaObject) ? PrimitiveArrayList.class : javaObject.getClass());
         Scriptable wrap = null;
         if (javaObject instanceof Map) {
             wrap = new ScriptableMap(scope, javaObject, staticType, map);
+        } else if (isPrimitiveArray(javaObject)) {
+            wrap = new ScriptablePrimitiveArray(scope, javaObject, staticType, map);
+        } else if (javaObject instanceof PrimitiveList) {
+            wrap = new ScriptablePrimitiveList(scope, javaObject, staticType, map);
         } else if (javaObject instanceof List) {
             wrap = new ScriptableList(scope, javaObject, staticType, map);
         } else {
@@ -102,17 +100,103 @@ public class SugarWrapFactory extends WrapFactory {
             }
         }
 
+        if (cache != null) {
+            wrapperCacheEvictions.addAndGet(cache.put(javaObject, staticType, wrap));
+        }
         return wrap;
     }
-    
-    private Map getExtensionFunctions(Class cls) {
-        Map<String, Method> map = new HashMap<String, Method>();
-        for (ExtensionEntry entry : functionRegistry) {
-            if (entry.clazz.isAssignableFrom(cls)) {
-                map.put(entry.name, entry.function);
-            }
+
+    /**
+     * Wraps int, long, double and byte arrays in a
+     * {@link ScriptablePrimitiveArray} so they get extension functions, and
+     * leaves other values to Rhino.
+     */
+    public Object wrap(Context cx, Scriptable scope, Object obj, Class staticType) {
+        if (isPrimitiveArray(obj)) {
+            return wrapAsJavaObject(cx, scope, obj, staticType);
+        }
+        return super.wrap(cx, scope, obj, staticType);
+    }
+
+    /**
+     * @return true for the array types {@link ScriptablePrimitiveArray} can
+     *         wrap
+     */
+    private static boolean isPrimitiveArray(Object obj) {
+        return (obj instanceof int[] || obj instanceof long[] || obj instanceof double[] || obj instanceof byte[]);
+    }
+
+    private WrapperCache getWrapperCache(Scriptable scope, Object javaObject) {
+        int size = wrapperCacheSize;
+        if (size <= 0 || scope == null) {
+            return null;
+        }
+        // Not worth caching value objects, they are rarely the same instance
+        if (javaObject instanceof String || javaObject instanceof Number
+                || javaObject instanceof Boolean || javaObject instanceof Character) {
+            return null;
         }
-        return map;
+        return WrapperCache.forScope(scope, size);
+    }
+
+    /**
+     * Sets the maximum number of wrappers remembered per top-level scope so
+     * wrapping the same Java object again returns the same wrapper.  Zero,
+     * the default, disables the cache.
+     */
+    public void setWrapperCacheSize(int size) {
+        this.wrapperCacheSize = size;
+    }
+
+    public int getWrapperCacheSize() {
+        return wrapperCacheSize;
+    }
+
+    public long getWrapperCacheHits() {
+        return wrapperCacheHits.get();
+    }
+
+    public long getWrapperCacheMisses() {
+        return wrapperCacheMisses.get();
+    }
+
+    public long getWrapperCacheEvictions() {
+        return wrapperCacheEvictions.get();
+    }
+    
+    /**
+     * Gets the immutable dispatch table of extension functions that apply to
+     * the class, keyed by function name.
+     */
+    protected Map<String, Object> getExtensionFunctions(Class cls) {
+        return registry.getExtensionFunctions(cls);
+    }
+
+    /**
+     * @return the number of objects wrapped by this factory
+     */
+    public long getWrapCount() {
+        return wrapCount.get();
+    }
+
+    /**
+     * @return the number of dispatch table lookups answered from the
+     *         per-class cache
+     */
+    public long getDispatchCacheHits() {
+        return registry.getDispatchCacheHits();
+    }
+
+    /**
+     * @return the number of dispatch tables that had to be built, which is
+     *         roughly one per distinct wrapped class
+     */
+    public long getDispatchCacheMisses() {
+        return registry.getDispatchCacheMisses();
+    }
+
+    public ExtensionRegistry getRegistry() {
+        return registry;
     }
     
     /**
@@ -150,17 +234,5 @@ public class SugarWrapFactory extends WrapFactory {
             Context.exit();
         }     
     }
-    
-    class ExtensionEntry {
-        public Class clazz;
-        public String name;
-        public Method function;
-        
-        public ExtensionEntry(Class cls, String name, Method func) {
-            this.clazz = cls;
-            this.name = name;
-            this.function = func;
-        }
-    }
 
 }
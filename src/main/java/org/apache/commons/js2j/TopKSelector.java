@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+
+/**
+ * Picks the k largest or smallest items offered to it, using a heap that
+ * never holds more than k items, so selecting from n items takes
+ * O(n log k) time and O(k) memory.  Items are ordered by a script
+ * comparator if the function given takes two arguments, by the key the
+ * function returns if it takes one, or by their natural order if there is
+ * no function.  Numbers compare by value and null keys are the smallest.
+ * Items that tie keep the order they were offered in.
+ */
+class TopKSelector {
+
+    /** The heap starts at most this big and grows as items come, so a large k costs nothing up front */
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int k;
+    private final boolean largest;
+    private final Comparator ranking;
+    private final PriorityQueue heap;
+    private final Context cx;
+    private final Function keyFunc;
+    private final Object[] param = new Object[1];
+    private Scriptable scope;
+    private long count;
+
+    /**
+     * @param order a comparator or key function, or null for natural order
+     * @param largest true to keep the largest items, false the smallest
+     */
+    TopKSelector(Context cx, int k, Function order, boolean largest) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Number of items must not be negative: " + k);
+        }
+        this.cx = cx;
+        this.k = k;
+        this.largest = largest;
+        Comparator keys = null;
+        Function key = null;
+        if (order != null) {
+            scope = ScriptableObject.getTopLevelScope(order);
+            if (order instanceof BaseFunction && ((BaseFunction)order).getArity() == 2) {
+                keys = new ScriptOrder(cx, scope, order);
+            } else {
+                key = order;
+            }
+        }
+        this.keyFunc = key;
+        this.ranking = new Ranking(keys, largest);
+        // Head of the heap is the lowest ranked item kept
+        this.heap = new PriorityQueue(Math.max(1, Math.min(k, INITIAL_CAPACITY)), Collections.reverseOrder(ranking));
+    }
+
+    /**
+     * Creates a selector from the <code>(k, [order])</code> arguments of an
+     * extension call.
+     */
+    static TopKSelector fromArgs(Context cx, Object[] args, int extra, boolean largest) {
+        int k = ((Number)args[0]).intValue() + extra;
+        Function order = (args.length > 1 && args[1] instanceof Function ? (Function)args[1] : null);
+        return new TopKSelector(cx, k, order, largest);
+    }
+
+    void offer(Object value) {
+        Entry entry = new Entry();
+        entry.value = value;
+        entry.seq = count++;
+        if (keyFunc != null) {
+            param[0] = value;
+            entry.key = unwrap(keyFunc.call(cx, scope, scope, param));
+        } else {
+            entry.key = unwrap(value);
+        }
+        if (heap.size() < k) {
+            heap.add(entry);
+        } else if (k > 0 && ranking.compare(entry, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(entry);
+        }
+    }
+
+    void offerAll(Iterator items) {
+        while (items.hasNext()) {
+            offer(items.next());
+        }
+    }
+
+    void offerLines(File file) throws IOException {
+        FileReader freader = null;
+        try {
+            freader = new FileReader(file);
+            BufferedReader reader = new BufferedReader(freader);
+            String line = null;
+            while ((line = reader.readLine()) != null) {
+                offer(line);
+            }
+        } finally {
+            if (freader != null) {
+                freader.close();
+            }
+        }
+    }
+
+    /**
+     * @return the items kept, best first: largest first for top k, smallest
+     *         first for bottom k
+     */
+    List getResult() {
+        Object[] entries = heap.toArray();
+        Arrays.sort(entries, ranking);
+        List result = new ArrayList(entries.length);
+        for (int x = 0; x < entries.length; x++) {
+            result.add(((Entry)entries[x]).value);
+        }
+        return result;
+    }
+
+    /**
+     * @return the last item of the result, or null if fewer than k items
+     *         were offered
+     */
+    Object getLast() {
+        if (heap.size() < k || k == 0) {
+            return null;
+        }
+        return ((Entry)heap.peek()).value;
+    }
+
+    private static Object unwrap(Object key) {
+        if (key instanceof Wrapper) {
+            key = ((Wrapper)key).unwrap();
+        }
+        return (key instanceof Undefined ? null : key);
+    }
+
+    private static class Entry {
+        Object value;
+        Object key;
+        long seq;
+    }
+
+    /**
+     * Orders entries best first, earlier items first on ties.  Without a
+     * script comparator the keys are compared with
+     * {@link SortedLists#compare(Object, Object)}.
+     */
+    private static class Ranking implements Comparator {
+        private final Comparator keys;
+        private final boolean largest;
+
+        Ranking(Comparator keys, boolean largest) {
+            this.keys = keys;
+            this.largest = largest;
+        }
+
+        public int compare(Object o1, Object o2) {
+            int result = (keys != null ? keys.compare(o1, o2)
+                    : SortedLists.compare(((Entry)o1).key, ((Entry)o2).key));
+            if (result == 0) {
+                long seq1 = ((Entry)o1).seq;
+                long seq2 = ((Entry)o2).seq;
+                return (seq1 < seq2 ? -1 : (seq1 == seq2 ? 0 : 1));
+            }
+            return (largest ? -result : result);
+        }
+    }
+
+    /**
+     * Compares entries' values with a script comparator.
+     */
+    private static class ScriptOrder implements Comparator {
+        private final Context cx;
+        private final Scriptable scope;
+        private final Function func;
+        private final Object[] params = new Object[2];
+
+        ScriptOrder(Context cx, Scriptable scope, Function func) {
+            this.cx = cx;
+            this.scope = scope;
+            this.func = func;
+        }
+
+        public int compare(Object o1, Object o2) {
+            params[0] = ((Entry)o1).value;
+            params[1] = ((Entry)o2).value;
+            Object result = func.call(cx, scope, scope, params);
+            if (result instanceof Number) {
+                double val = ((Number)result).doubleValue();
+                return (val < 0 ? -1 : (val > 0 ? 1 : 0));
+            } else {
+                throw new RuntimeException("Invalid sorting function - should return a number.  Returned "+result);
+            }
+        }
+    }
+}
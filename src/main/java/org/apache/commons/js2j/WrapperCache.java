@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Bounded, least recently used cache from Java objects, compared by
+ * identity, and the static type they were wrapped as to the wrappers
+ * created for them in one top-level scope.  Both the objects and the
+ * wrappers are held weakly, so the cache never keeps either alive.  Hits
+ * and misses are counted by the caller, {@link SugarWrapFactory}.
+ */
+public class WrapperCache {
+
+    private static final Object SCOPE_KEY = WrapperCache.class;
+
+    private int maxSize;
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    private final LinkedHashMap<IdentityKey, WeakReference<Scriptable>> map;
+    private long evictions;
+
+    public WrapperCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<IdentityKey, WeakReference<Scriptable>>(16, 0.75f, true) {
+            /** Auto-generated serialization id */
+            private static final long serialVersionUID = -4385307627432081543L;
+
+            protected boolean removeEldestEntry(Map.Entry<IdentityKey, WeakReference<Scriptable>> eldest) {
+                if (size() > WrapperCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the cache associated with the top-level scope of the passed scope,
+     * creating it if needed, and resizes it if the size has changed since.
+     * Returns null if the top-level scope can't hold associated values.
+     */
+    public static WrapperCache forScope(Scriptable scope, int maxSize) {
+        Scriptable top = ScriptableObject.getTopLevelScope(scope);
+        if (!(top instanceof ScriptableObject)) {
+            return null;
+        }
+        ScriptableObject so = (ScriptableObject)top;
+        WrapperCache cache = (WrapperCache)so.getAssociatedValue(SCOPE_KEY);
+        if (cache == null) {
+            // associateValue keeps the first value if another thread got in first
+            cache = (WrapperCache)so.associateValue(SCOPE_KEY, new WrapperCache(maxSize));
+        }
+        if (cache.getMaxSize() != maxSize) {
+            cache.setMaxSize(maxSize);
+        }
+        return cache;
+    }
+
+    /**
+     * @return the wrapper previously cached for the object wrapped as the
+     *         static type, or null
+     */
+    public synchronized Scriptable get(Object javaObject, Class staticType) {
+        expungeStaleEntries();
+        WeakReference<Scriptable> ref = map.get(new IdentityKey(javaObject, staticType, null));
+        return (ref == null ? null : ref.get());
+    }
+
+    /**
+     * Caches the wrapper for the object wrapped as the static type.
+     * @return the number of entries evicted to stay within the size bound
+     */
+    public synchronized int put(Object javaObject, Class staticType, Scriptable wrapper) {
+        long before = evictions;
+        map.put(new IdentityKey(javaObject, staticType, queue), new WeakReference<Scriptable>(wrapper));
+        return (int)(evictions - before);
+    }
+
+    public synchronized int size() {
+        expungeStaleEntries();
+        return map.size();
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Changes the maximum number of entries, evicting the least recently
+     * used ones if the cache is now over it.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        Iterator<IdentityKey> keys = map.keySet().iterator();
+        while (map.size() > maxSize && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+            evictions++;
+        }
+    }
+
+    private void expungeStaleEntries() {
+        Reference<? extends Object> ref;
+        while ((ref = queue.poll()) != null) {
+            map.remove(ref);
+        }
+    }
+
+    /**
+     * Weak key compared by the identity of its referent and by its static
+     * type.  Cleared keys are only equal to themselves so they can still be
+     * removed.
+     */
+    static class IdentityKey extends WeakReference<Object> {
+        private final Class staticType;
+        private final int hash;
+
+        IdentityKey(Object referent, Class staticType, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.staticType = staticType;
+            this.hash = System.identityHashCode(referent) * 31 + (staticType == null ? 0 : staticType.hashCode());
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof IdentityKey)) {
+                return false;
+            }
+            IdentityKey other = (IdentityKey)o;
+            Object referent = get();
+            return referent != null && referent == other.get() && staticType == other.staticType;
+        }
+    }
+}
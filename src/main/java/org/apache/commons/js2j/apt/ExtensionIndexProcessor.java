@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j.apt;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Writes the extension index for classes marked with
+ * {@link org.apache.commons.js2j.ExtensionClass}.  Each public static method
+ * becomes one tab separated line:
+ * <pre>
+ * kind  targetClass  name  holderClass  returnType
+ * </pre>
+ * where kind is <tt>function</tt> for factories taking only the target, or
+ * <tt>property</tt> for methods taking the target and the scope.  Class
+ * names are in the form accepted by <tt>Class.forName</tt>.
+ */
+@SupportedAnnotationTypes(ExtensionIndexProcessor.ANNOTATION)
+public class ExtensionIndexProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION = "org.apache.commons.js2j.ExtensionClass";
+
+    /** Must match ExtensionRegistry.INDEX_RESOURCE */
+    static final String INDEX_RESOURCE = "META-INF/js2j/extensions.idx";
+
+    private final List<String> lines = new ArrayList<String>();
+
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
+        if (env.processingOver()) {
+            if (!lines.isEmpty()) {
+                writeIndex();
+            }
+            return false;
+        }
+        for (TypeElement annotation : annotations) {
+            for (Element holder : env.getElementsAnnotatedWith(annotation)) {
+                if (holder.getKind() == ElementKind.CLASS) {
+                    addHolder((TypeElement)holder);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void addHolder(TypeElement holder) {
+        String holderName = processingEnv.getElementUtils().getBinaryName(holder).toString();
+        for (Element member : holder.getEnclosedElements()) {
+            Set<Modifier> mods = member.getModifiers();
+            if (member.getKind() != ElementKind.METHOD
+                    || !mods.contains(Modifier.STATIC) || !mods.contains(Modifier.PUBLIC)) {
+                continue;
+            }
+            ExecutableElement method = (ExecutableElement)member;
+            List<? extends VariableElement> params = method.getParameters();
+            String kind;
+            if (params.size() == 1) {
+                kind = "function";
+            } else if (params.size() == 2) {
+                kind = "property";
+            } else {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Extension methods must take the target object, and optionally the scope", method);
+                continue;
+            }
+            lines.add(kind + "\t" + className(params.get(0).asType()) + "\t" + method.getSimpleName()
+                    + "\t" + holderName + "\t" + className(method.getReturnType()));
+        }
+    }
+
+    private String className(TypeMirror type) {
+        type = processingEnv.getTypeUtils().erasure(type);
+        if (type.getKind().isPrimitive() || type.getKind() == TypeKind.VOID) {
+            return type.toString();
+        } else if (type.getKind() == TypeKind.ARRAY) {
+            return descriptor(type).replace('/', '.');
+        }
+        TypeElement element = (TypeElement)((DeclaredType)type).asElement();
+        return processingEnv.getElementUtils().getBinaryName(element).toString();
+    }
+
+    private String descriptor(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN: return "Z";
+            case BYTE: return "B";
+            case CHAR: return "C";
+            case SHORT: return "S";
+            case INT: return "I";
+            case LONG: return "J";
+            case FLOAT: return "F";
+            case DOUBLE: return "D";
+            case ARRAY: return "[" + descriptor(((ArrayType)type).getComponentType());
+            default: return "L" + className(type) + ";";
+        }
+    }
+
+    private void writeIndex() {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(
+                    StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+            Writer writer = file.openWriter();
+            try {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write " + INDEX_RESOURCE + ": " + ex);
+        }
+    }
+}
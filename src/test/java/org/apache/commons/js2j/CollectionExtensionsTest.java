@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+public class CollectionExtensionsTest extends TestScript {
+
+    public void setUp() throws Exception {
+        super.setUp();
+        run("this.list = new java.util.ArrayList();");
+        run("for (var x = 1; x <= 10; x++) { list.add(new java.lang.Integer(x)); }");
+    }
+
+    public void testLazy() throws Exception {
+        run("result = list.lazy().filter(function(val) { return val % 2 == 0; }).map(function(val) { return 'v' + val; }).toList();");
+        
+        test("result.size()", "5");
+        test("result[0] == 'v2'", "true");
+        test("'' + list.lazy().skip(3).take(2).toList()", "[4, 5]");
+        test("list.lazy().reduce(function(sum, val) { return sum + val; }, 0) == 55", "true");
+        test("list.lazy().filter(function(val) { return val > 20; }).first() == null", "true");
+    }
+
+    public void testLazyStopsEarly() throws Exception {
+        run("calls = 0;");
+        run("val = list.lazy().map(function(val) { calls++; return val * 10; }).filter(function(val) { return val > 30; }).first();");
+        
+        test("val == 40", "true");
+        test("calls == 4", "true");
+        
+        run("calls = 0;");
+        run("list.lazy().map(function(val) { calls++; return val; }).take(3).count();");
+        test("calls == 3", "true");
+        
+        run("calls = 0;");
+        test("list.lazy().map(function(val) { calls++; return val; }).take(0).count() == 0", "true");
+        test("calls == 0", "true");
+    }
+
+    public void testLazyFlatMap() throws Exception {
+        run("nested = list.lazy().take(3).flatMap(function(val) { return [val, val]; });");
+        
+        test("nested.count() == 6", "true");
+        test("nested.skip(1).first() == 1", "true");
+    }
+
+    public void testLazyThisObj() throws Exception {
+        test("list.lazy().map(function(val) { return this.size(); }).first() == 10", "true");
+        test("list.lazy().filter(function(val) { return this === list; }).count() == 10", "true");
+    }
+
+    public void testParallel() throws Exception {
+        run("big = new java.util.ArrayList();");
+        run("for (var x = 0; x < 1000; x++) { big.add(new java.lang.Integer(x)); }");
+        run("squares = big.parallelMap(function(val) { return val * val; });");
+        
+        test("squares.size() == 1000", "true");
+        test("squares[999] == 998001 && squares[10] == 100", "true");
+        
+        run("evens = new java.util.LinkedList(big).parallelFindAll(function(val) { return val % 2 == 0 ? val : null; });");
+        test("evens.size() == 500 && evens[499] == 998", "true");
+        
+        run("seen = java.util.Collections.synchronizedSet(new java.util.HashSet());");
+        run("big.parallelEach(function(val) { seen.add(val); });");
+        test("seen.size() == 1000", "true");
+    }
+
+    public void testAggregates() throws Exception {
+        test("'' + (list.sum() + 1)", "56");
+        test("list.min() == 1 && list.max() == 10", "true");
+        test("'' + (list.avg())", "5.5");
+        test("'' + (list.sum(function(val) { return val * 2; }))", "110");
+        
+        run("list.add(new java.lang.Long(java.lang.Long.MAX_VALUE));");
+        run("list.add(new java.lang.Long(java.lang.Long.MAX_VALUE));");
+        test("list.sum() > 1e19", "true");
+        
+        run("big = new java.util.ArrayList();");
+        run("big.add(java.lang.Long.valueOf('9007199254740992')); big.add(java.lang.Long.valueOf(1));");
+        test("'' + java.lang.Long.toString(big.sum())", "9007199254740993");
+        test("new java.util.ArrayList().min() == null", "true");
+    }
+
+    public void testStats() throws Exception {
+        run("s = list.stats();");
+        
+        test("'' + (s.count)", "10");
+        test("'' + (s.mean)", "5.5");
+        test("'' + (s.variance)", "8.25");
+        
+        run("h = list.histogram(3);");
+        test("'' + (h.counts.length)", "3");
+        test("'' + (h.counts.join(','))", "3,3,4");
+        test("'' + (h.bucketWidth)", "3");
+    }
+
+    public void testEachBatch() throws Exception {
+        run("calls = 0; total = 0; sizes = [];");
+        run("list.eachBatch(4, function(items) { calls++; sizes.push(items.length); for (var x = 0; x < items.length; x++) total += items[x]; });");
+        
+        test("calls == 3 && total == 55", "true");
+        test("sizes.join(',')", "4,4,2");
+        
+        run("sizes = [];");
+        run("list.eachBatch(4, function(items) { sizes.push(items.length); items.push('extra'); });");
+        test("sizes.join(',')", "4,4,2");
+        
+        run("lines = 0;");
+        run("new java.io.ByteArrayInputStream(new java.lang.String('a\\nb\\nc').getBytes()).eachBatch(2, function(batch) { lines += batch.length; });");
+        test("lines == 3", "true");
+    }
+
+    public void testTopK() throws Exception {
+        run("top = list.topK(3);");
+        
+        test("'' + top", "[10, 9, 8]");
+        test("'' + list.bottomK(2)", "[1, 2]");
+        test("'' + list.topK(2, function(val1, val2) { return val2 - val1; })", "[1, 2]");
+        test("'' + list.topK(4, function(val) { return val % 3; })", "[2, 5, 8, 1]");
+        test("list.nthElement(4) == 5", "true");
+        test("list.nthElement(20) == null", "true");
+        test("list.topK(20).size() == 10", "true");
+    }
+
+    public void testTopKMixedValues() throws Exception {
+        run("mixed = new java.util.ArrayList();");
+        run("mixed.add(3); mixed.add('a'); mixed.add(null); mixed.add(1);");
+        
+        test("top = mixed.topK(2); top[0] == 'a' && top[1] == 3", "true");
+        test("bottom = mixed.bottomK(2); bottom[0] == null && bottom[1] == 1", "true");
+    }
+
+    public void testIndexes() throws Exception {
+        run("byValue = list.indexBy(function(val) { return val * 10; });");
+        
+        test("byValue[30] == 3 && byValue['100'] == 10", "true");
+        test("byValue.size() == 10", "true");
+        
+        run("groups = list.groupBy(function(val) { return val % 2 == 0 ? 'even' : 'odd'; });");
+        test("groups.even.size() == 5 && groups.odd.get(0) == 1", "true");
+        
+        run("squares = list.toMap(function(val) { return 'n' + val; }, function(val) { return val * val; });");
+        test("squares.n4 == 16", "true");
+        
+        test("list.indexBy(function(val) { return this.size(); }).size() == 1", "true");
+        test("list.groupBy(function(val) { return this === list; }).get('true').size() == 10", "true");
+        test("list.toMap(function(val) { return val; }, function(val) { return this.size(); })[1] == 10", "true");
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.javascript.Scriptable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the reflective Method.invoke path previously used by
+ * JavaObjectWrapper against the bound {@link ExtensionInvoker}.  Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) org.openjdk.jmh.Main ExtensionInvokerBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtensionInvokerBenchmark {
+
+    private List list;
+    private Method lengthMethod;
+    private Method eachMethod;
+    private ExtensionInvoker lengthInvoker;
+    private ExtensionInvoker eachInvoker;
+
+    @Setup
+    public void setUp() throws Exception {
+        list = new ArrayList();
+        list.add("foo");
+        lengthMethod = CollectionExtensions.class.getMethod("length", Collection.class, Scriptable.class);
+        eachMethod = CollectionExtensions.class.getMethod("each", Collection.class);
+        lengthInvoker = ExtensionInvoker.create(lengthMethod);
+        eachInvoker = ExtensionInvoker.create(eachMethod);
+    }
+
+    @Benchmark
+    public Object propertyReflective() throws Exception {
+        if (lengthMethod.getParameterTypes().length == 2) {
+            return lengthMethod.invoke(null, list, null);
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Object propertyInvoker() throws Exception {
+        return lengthInvoker.invoke(list, null);
+    }
+
+    @Benchmark
+    public Object factoryReflective() throws Exception {
+        if (eachMethod.getParameterTypes().length == 2) {
+            return null;
+        }
+        return eachMethod.invoke(null, list);
+    }
+
+    @Benchmark
+    public Object factoryInvoker() throws Exception {
+        return eachInvoker.invoke(list, null);
+    }
+}
@@ -112,4 +112,14 @@ public class FileExtensionsTest extends TestScript {
         
         test("foo == true && bar == true;", "true");
     }
+
+    public void testTopK() throws Exception {
+        run("writer = new java.io.FileWriter(file);");
+        run("writer.write('bb\\na\\ndddd\\nccc\\n');");
+        run("writer.close();");
+        run("longest = file.topK(2, function(line) { return line.length; });");
+        
+        test("longest.size() == 2 && longest[0] == 'dddd' && longest[1] == 'ccc'", "true");
+        test("file.nthElement(1) == 'bb'", "true");
+    }
 }
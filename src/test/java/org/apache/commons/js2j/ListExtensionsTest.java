@@ -64,6 +64,35 @@ public class ListExtensionsTest extends TestScript {
         test("list[0]", "bar");
     }
 
+    public void testArrayMethods() throws Exception {
+        test("list.push('jim', 'sara') == 4", "true");
+        test("list.slice(-2).toString() == '[jim, sara]'", "true");
+        test("list.slice(1, 3).toString() == '[bar, jim]'", "true");
+        test("list.splice(1, 2, 'bob').toString() == '[bar, jim]'", "true");
+        test("list.toString() == '[foo, bob, sara]'", "true");
+        test("list.indexOf('sara') == 2", "true");
+        test("list.indexOf('foo', 1) == -1", "true");
+        test("list.concat([1, 2], list).size() == 8", "true");
+        
+        run("nums = new java.util.LinkedList(); nums.add(java.lang.Integer.valueOf(7));");
+        test("nums.indexOf(7) == 0", "true");
+        
+        run("linked = new java.util.LinkedList(); linked.add('x'); linked.add('y'); linked.add('z');");
+        test("linked.splice(1, 1, 'a', 'b').toString() == '[y]'", "true");
+        test("linked.toString() == '[x, a, b, z]'", "true");
+        test("linked.splice(0, 3, 'c').size() == 3 && linked.toString() == '[c, z]'", "true");
+    }
+
+    public void testPutPastEnd() throws Exception {
+        run("seq = new java.util.LinkedList(); seq[3] = 'end';");
+        
+        test("seq.size() == 4", "true");
+        test("seq[1] == null", "true");
+        test("1 in seq", "true");
+        test("4 in seq", "false");
+        test("seq[10] === undefined", "true");
+    }
+
     public void testLength() throws Exception {
         test("list.length", "2");
     }
@@ -80,4 +109,72 @@ public class ListExtensionsTest extends TestScript {
         
         test("result.size()", "2");
     }
+
+    public void testSortBy() throws Exception {
+        run("list.add('a'); list.add('bazz');");
+        run("calls = 0;");
+        run("list.sortBy(function(val) { calls++; return val.length; });");
+        
+        test("calls == 4", "true");
+        test("list[0] == 'a' && list[1] == 'foo' && list[2] == 'bar' && list[3] == 'bazz'", "true");
+        
+        run("list.sortBy(function(val) { return '' + val; });");
+        test("list[0] == 'a' && list[3] == 'foo'", "true");
+        
+        run("dates = new java.util.ArrayList();");
+        run("dates.add(new java.util.Date(3000)); dates.add(null); dates.add(new java.util.Date(1000));");
+        run("dates.sortBy(function(val) { return val; });");
+        test("dates[0].getTime() == 1000 && dates[1].getTime() == 3000 && dates[2] == null", "true");
+    }
+
+    public void testSortByMixedKeys() throws Exception {
+        run("mixed = new java.util.ArrayList();");
+        run("mixed.add(3); mixed.add('a'); mixed.add(null); mixed.add(1); mixed.add(java.lang.Boolean.TRUE);");
+        run("mixed.sortBy(function(val) { return val; });");
+        
+        test("mixed[0] == 1 && mixed[1] == 3 && mixed[2] == 'a' && mixed[3] == true && mixed[4] == null", "true");
+    }
+
+    public void testParallelSort() throws Exception {
+        run("big = new java.util.ArrayList();");
+        run("for (var x = 0; x < 20000; x++) { big.add(new java.lang.Integer((x * 7919) % 20000)); }");
+        run("big.sortEach(function(val1, val2) { return val1 - val2; });");
+        
+        test("big[0] == 0 && big[10000] == 10000 && big[19999] == 19999", "true");
+        
+        run("big.sortBy(function(val) { return val % 2; });");
+        test("big[0] == 0 && big[1] == 2 && big[10000] == 1 && big[10001] == 3", "true");
+    }
+
+    public void testAsConcurrent() throws Exception {
+        run("lst = list.asConcurrent();");
+        run("lst.each(function(val) { lst.add(val); });");
+        
+        test("lst.size() == 4 && list.size() == 4", "true");
+        
+        run("copy = list.asCopyOnWrite();");
+        run("copy.add('baz');");
+        test("copy.size() == 5 && list.size() == 4", "true");
+        
+        run("lst.sortBy(function(val) { return '' + val; });");
+        test("lst[0] == 'bar' && list[0] == 'bar'", "true");
+        run("lst.removeAll(java.util.Collections.singleton('bar'));");
+        test("lst.size() == 2 && lst.indexOf('bar') == -1", "true");
+        test("try { it = lst.listIterator(); it.next(); it.set('x'); false } catch (e) { lst[0] == 'foo' }", "true");
+    }
+
+    public void testBinarySearch() throws Exception {
+        run("nums = new java.util.ArrayList();");
+        run("for (var x = 0; x < 100; x += 2) { nums.add(new java.lang.Integer(x)); }");
+        
+        test("nums.binarySearch(42) == 21", "true");
+        test("nums.binarySearch(43) == -23", "true");
+        test("nums.lowerBound(43) == 22 && nums.upperBound(42) == 22 && nums.lowerBound(42) == 21", "true");
+        test("'' + nums.range(10, 17)", "[10, 12, 14, 16]");
+        test("nums.range(200, 300).size() == 0", "true");
+        
+        run("list.sortBy(function(val) { return val; });");
+        test("list.binarySearchBy(function(val) { return val; }, 'foo') == 1", "true");
+        test("'' + new java.util.LinkedList(nums).range(4, 8)", "[4, 6]");
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+public class MapExtensionsTest extends TestScript {
+
+    public void setUp() throws Exception {
+        super.setUp();
+        run("this.map = new java.util.HashMap();");
+        run("map.put('foo', 'bar');");
+    }
+
+    public void testAsConcurrent() throws Exception {
+        run("cmap = map.asConcurrent();");
+        
+        test("cmap.foo == 'bar'", "true");
+        test("cmap instanceof java.util.concurrent.ConcurrentHashMap", "true");
+        
+        run("cmap.foo = null;");
+        test("cmap.size() == 0 && map.size() == 1", "true");
+    }
+
+    public void testComputeIfAbsent() throws Exception {
+        run("calls = 0;");
+        run("val = map.computeIfAbsent('jim', function(key) { calls++; return key + '!'; });");
+        run("val = map.computeIfAbsent('jim', function(key) { calls++; return 'other'; });");
+        
+        test("val", "jim!");
+        test("calls == 1 && map.jim == 'jim!'", "true");
+    }
+
+    public void testMergeCounters() throws Exception {
+        run("counts = new java.util.HashMap().asConcurrent();");
+        run("words = new java.util.ArrayList();");
+        run("for (var x = 0; x < 2000; x++) { words.add(x % 2 == 0 ? 'even' : 'odd'); }");
+        run("words.parallelEach(function(word) { counts.merge(word, 1, function(total, one) { return total + one; }); });");
+        
+        test("counts.even == 1000 && counts.odd == 1000", "true");
+        test("counts.merge('even', 1, function(total, one) { return null; }) == null && counts.size() == 1", "true");
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+public class PrimitiveListTest extends TestScript {
+
+    public void setUp() throws Exception {
+        super.setUp();
+        run("this.ints = new Packages.org.apache.commons.js2j.IntList();");
+        run("this.doubles = new Packages.org.apache.commons.js2j.DoubleList();");
+        run("for (var x = 0; x < 100; x++) { ints[x] = x; doubles[x] = x / 2; }");
+    }
+
+    public void testIndexAccess() throws Exception {
+        test("ints.size() == 100 && ints.length == 100", "true");
+        test("'' + (ints[10] + ints[20])", "30");
+        test("'' + (doubles[3] * 2)", "3");
+        test("typeof ints[200]", "undefined");
+        
+        run("ints[105] = 7;");
+        test("ints.size() == 106 && ints[103] == 0 && ints[105] == 7", "true");
+        
+        IntList ints = (IntList)run("ints");
+        assertEquals(7, ints.getInt(105));
+    }
+
+    public void testListMethodsConvert() throws Exception {
+        IntList ints = new IntList();
+        ints.add(null);
+        ints.add("5");
+        ints.add(0, Double.valueOf(2.9));
+        assertEquals("[2, 0, 5]", ints.toString());
+        assertEquals(Integer.valueOf(0), ints.set(1, "7"));
+        assertEquals(Integer.valueOf(2), ints.remove(0));
+        assertEquals("[7, 5]", ints.toString());
+        
+        LongList longs = new LongList(1);
+        longs.add(Long.valueOf(Long.MAX_VALUE));
+        longs.add(0, null);
+        assertEquals(Long.MAX_VALUE, longs.getLong(1));
+        assertEquals(0L, longs.getLong(0));
+    }
+
+    public void testExtensions() throws Exception {
+        test("'' + (ints.sum())", "4950");
+        test("'' + (doubles.max())", "49.5");
+        test("'' + (ints.stats().mean)", "49.5");
+        test("ints.findAll(function(val) { return val > 97 ? val : null; }).size() == 2", "true");
+        
+        run("longs = new Packages.org.apache.commons.js2j.LongList();");
+        run("longs.add(new java.lang.Long(5)); longs[1] = 6;");
+        test("'' + (longs.sum())", "11");
+    }
+
+    public void testPrimitiveArrays() throws Exception {
+        run("arr = ints.toIntArray(); arr[0] = 42;");
+        test("arr.length == 100 && arr[0] == 42 && arr[99] == 99", "true");
+        test("typeof arr[100]", "undefined");
+        test("'' + (arr.sum())", "4992");
+        test("'' + (arr.sort().max())", "99");
+        test("arr[0] == 1", "true");
+        run("found = 0; arr.each(function(val) { if (val > 97) found++; });");
+        test("found == 2", "true");
+        
+        run("bytes = new java.lang.String('abc').getBytes();");
+        test("'' + (bytes.sum())", "294");
+        test("bytes.find(function(val) { return val == 98 ? val : null; }) == 98", "true");
+        test("new java.lang.String(bytes) == 'abc'", "true");
+        
+        test("try { arr[100] = 1; false } catch (e) { ('' + e).indexOf('out of bounds') > -1 }", "true");
+        test("arr.sort() === arr", "true");
+        test("'' + arr.topK(2)", "[99, 98]");
+        test("count = 0; for (i in arr) count++; count == 100", "true");
+        
+        int[] arr = (int[])run("arr");
+        assertEquals(42, arr[41]);
+        assertEquals(42, arr[42]);
+    }
+}
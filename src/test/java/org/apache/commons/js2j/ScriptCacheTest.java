@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+public class ScriptCacheTest extends TestCase {
+
+    private File dir;
+
+    protected void tearDown() throws Exception {
+        if (dir != null) {
+            File[] files = dir.listFiles();
+            for (int x = 0; files != null && x < files.length; x++) {
+                files[x].delete();
+            }
+            dir.delete();
+        }
+    }
+
+    public void testLruEviction() throws Exception {
+        ScriptCache cache = new ScriptCache(2);
+        SugarRuntime runtime = new SugarRuntime(new SugarContextFactory(), cache);
+        
+        runtime.evaluateString("1 + 1", "a");
+        runtime.evaluateString("2 + 2", "b");
+        runtime.evaluateString("1 + 1", "a");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        
+        runtime.evaluateString("3 + 3", "c");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(runtime.compile("1 + 1", "a"), runtime.compile("1 + 1", "a"));
+    }
+
+    public void testClassDirectory() throws Exception {
+        dir = File.createTempFile("scripts", "");
+        dir.delete();
+        
+        ScriptCache cache = new ScriptCache(10);
+        cache.setClassDirectory(dir);
+        SugarRuntime runtime = new SugarRuntime(new SugarContextFactory(), cache);
+        assertEquals(Double.valueOf(6), runtime.evaluateString("var x = 2; x * 3", "test"));
+        assertEquals(1, dir.listFiles().length);
+        
+        // A new cache, as after a restart, loads the class instead of compiling
+        ScriptCache restarted = new ScriptCache(10);
+        restarted.setClassDirectory(dir);
+        runtime = new SugarRuntime(new SugarContextFactory(), restarted);
+        assertEquals(Double.valueOf(6), runtime.evaluateString("var x = 2; x * 3", "test"));
+        assertEquals(1, restarted.getDiskLoadCount());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares a fixed pool of platform threads against one virtual thread per
+ * script on a file-processing workload, where each script reads a local
+ * file with eachLine and getText.  Virtual threads need Java 21, older
+ * JVMs measure a thread per script instead.  Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) org.openjdk.jmh.Main ScriptExecutorBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScriptExecutorBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    @Param({"16"})
+    public int poolSize;
+
+    @Param({"1000"})
+    public int scripts;
+
+    private ScriptExecutor executor;
+    private List<File> files;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SugarRuntime runtime = new SugarRuntime();
+        if ("virtual".equals(mode)) {
+            executor = ScriptExecutor.newVirtualThreadExecutor(runtime, scripts);
+        } else {
+            executor = new ScriptExecutor(runtime, poolSize, scripts);
+        }
+        files = new ArrayList<File>();
+        for (int x = 0; x < 64; x++) {
+            File file = File.createTempFile("bench", ".txt");
+            file.deleteOnExit();
+            FileWriter writer = new FileWriter(file);
+            try {
+                for (int line = 0; line < 500; line++) {
+                    writer.write("line " + line + " of file " + x + "\n");
+                }
+            } finally {
+                writer.close();
+            }
+            files.add(file);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Object processFiles() throws Exception {
+        List<Future<Object>> results = new ArrayList<Future<Object>>(scripts);
+        for (int x = 0; x < scripts; x++) {
+            String path = files.get(x % files.size()).getPath().replace("\\", "\\\\");
+            results.add(executor.submit(
+                    "var file = new java.io.File('" + path + "');"
+                    + "var count = 0; file.eachLine(function(line) { count++; });"
+                    + "count + file.getText().length()", "bench"));
+        }
+        Object last = null;
+        for (Future<Object> result : results) {
+            last = result.get();
+        }
+        return last;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+import junit.framework.TestCase;
+
+public class ScriptExecutorTest extends TestCase {
+
+    private ScriptExecutor executor;
+
+    protected void setUp() throws Exception {
+        executor = new ScriptExecutor(new SugarRuntime(), 2, 2);
+    }
+
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    public void testSubmit() throws Exception {
+        List<Future<Object>> results = new ArrayList<Future<Object>>();
+        for (int x = 0; x < 10; x++) {
+            results.add(executor.submit("var list = new java.util.ArrayList(); list.add('foo'); list.length * " + x, "test"));
+        }
+        for (int x = 0; x < 10; x++) {
+            assertEquals((double)x, ((Number)results.get(x).get()).doubleValue(), 0);
+        }
+        assertEquals(10, executor.getCompletedCount());
+        assertTrue(executor.getLatencyPercentile(99) >= executor.getLatencyPercentile(50));
+        assertTrue(executor.getThroughput() > 0);
+    }
+
+    public void testBatch() throws Exception {
+        List<SugarRuntime.ScopeAction> actions = new ArrayList<SugarRuntime.ScopeAction>();
+        for (int x = 0; x < 3; x++) {
+            final int val = x;
+            actions.add(new SugarRuntime.ScopeAction() {
+                public Object run(Context cx, Scriptable scope) {
+                    return cx.evaluateString(scope, "x = " + val, "test", 1, null);
+                }
+            });
+        }
+        List<Future<Object>> results = executor.submitBatch(actions);
+        
+        assertEquals(2.0, ((Number)results.get(2).get()).doubleValue(), 0);
+    }
+
+    public void testBackpressure() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        SugarRuntime.ScopeAction blocked = new SugarRuntime.ScopeAction() {
+            public Object run(Context cx, Scriptable scope) throws Exception {
+                latch.await();
+                return null;
+            }
+        };
+        List<Future<Object>> results = new ArrayList<Future<Object>>();
+        for (int x = 0; x < 4; x++) {
+            results.add(executor.trySubmit(blocked));
+            assertNotNull(results.get(x));
+        }
+        assertNull(executor.trySubmit(blocked));
+        
+        latch.countDown();
+        results.add(executor.submit(blocked));
+        for (Future<Object> result : results) {
+            result.get();
+        }
+        assertEquals(5, executor.getCompletedCount());
+    }
+
+    public void testCancelQueued() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        SugarRuntime.ScopeAction blocked = new SugarRuntime.ScopeAction() {
+            public Object run(Context cx, Scriptable scope) throws Exception {
+                latch.await();
+                return null;
+            }
+        };
+        List<Future<Object>> results = new ArrayList<Future<Object>>();
+        for (int x = 0; x < 4; x++) {
+            results.add(executor.submit(blocked));
+        }
+        assertTrue(results.get(3).cancel(false));
+        assertTrue(results.get(2).cancel(false));
+        
+        Future<Object> after = executor.trySubmit(blocked);
+        assertNotNull(after);
+        latch.countDown();
+        after.get();
+        results.get(0).get();
+        results.get(1).get();
+        assertEquals(3, executor.getCompletedCount());
+    }
+
+    public void testBatchTooLarge() throws Exception {
+        List<SugarRuntime.ScopeAction> actions = new ArrayList<SugarRuntime.ScopeAction>();
+        for (int x = 0; x < 5; x++) {
+            actions.add(new SugarRuntime.ScopeAction() {
+                public Object run(Context cx, Scriptable scope) {
+                    return null;
+                }
+            });
+        }
+        try {
+            executor.submitBatch(actions);
+            fail("Should have rejected a batch larger than the capacity");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    public void testVirtualThreadExecutor() throws Exception {
+        ScriptExecutor virtual = ScriptExecutor.newVirtualThreadExecutor(executor.getRuntime(), 100);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int x = 0; x < 20; x++) {
+                results.add(virtual.submit("x = " + x, "test"));
+            }
+            for (int x = 0; x < 20; x++) {
+                assertEquals((double)x, ((Number)results.get(x).get()).doubleValue(), 0);
+            }
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    public void testInstructionBudget() throws Exception {
+        executor.setExecutionBudget(new ExecutionBudget(100000, 0));
+        Future<Object> runaway = executor.submit("try { while (true) {} } catch (e) {}", "test");
+        try {
+            runaway.get();
+            fail("Should have run out of instructions");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof ExecutionBudgetExceededError);
+            assertTrue(ex.getCause().getMessage().indexOf("100000 instructions") > -1);
+        }
+        assertEquals(2.0, ((Number)executor.submit("1 + 1", "test").get()).doubleValue(), 0);
+    }
+
+    public void testParallelBudget() throws Exception {
+        executor.setExecutionBudget(new ExecutionBudget(100000, 0));
+        // Only the pool's threads run away, the calling thread leaves them time to
+        Future<Object> runaway = executor.submit("var list = new java.util.ArrayList(); "
+                + "for (var x = 0; x < 200; x++) { list.add(x); } "
+                + "var caller = java.lang.Thread.currentThread(); "
+                + "list.parallelEach(function(x) { "
+                + "  if (caller.equals(java.lang.Thread.currentThread())) { java.lang.Thread.sleep(5); } "
+                + "  else { while (true) {} } })", "test");
+        try {
+            runaway.get(10, TimeUnit.SECONDS);
+            fail("Should have run out of instructions");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof ExecutionBudgetExceededError);
+        }
+    }
+
+    public void testTimeBudget() throws Exception {
+        executor.setExecutionBudget(new ExecutionBudget(0, 50));
+        try {
+            executor.submit("var list = new java.util.ArrayList(); list.add(1); while (true) { list.each(function(x) {}); }", "test").get();
+            fail("Should have run out of time");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause().getMessage().indexOf("50 ms") > -1);
+        }
+    }
+
+    public void testSliceYield() throws Exception {
+        ScriptExecutor single = new ScriptExecutor(executor.getRuntime(), 1, 10);
+        try {
+            single.setExecutionBudget(new ExecutionBudget(0, 0, 5, 1000));
+            Future<Object> slow = single.submit("var end = new Date().getTime() + 200; while (new Date().getTime() < end) {} 'slow'", "test");
+            Future<Object> quick = single.submit("'quick'", "test");
+            assertEquals("quick", quick.get().toString());
+            assertFalse(slow.isDone());
+            assertEquals("slow", slow.get().toString());
+            assertEquals(1, single.getYieldCount());
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    public void testTenantFairness() throws Exception {
+        ScriptExecutor single = new ScriptExecutor(executor.getRuntime(), 1, 10);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        try {
+            single.submit(new SugarRuntime.ScopeAction() {
+                public Object run(Context cx, Scriptable scope) throws Exception {
+                    latch.await();
+                    return null;
+                }
+            });
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            String[] tenants = new String[] {"a", "a", "a", "b"};
+            for (int x = 0; x < tenants.length; x++) {
+                final String name = tenants[x] + x;
+                results.add(single.submit(tenants[x], new SugarRuntime.ScopeAction() {
+                    public Object run(Context cx, Scriptable scope) {
+                        return order.add(name);
+                    }
+                }));
+            }
+            latch.countDown();
+            for (Future<Object> result : results) {
+                result.get();
+            }
+            assertEquals("[a0, b3, a1, a2]", order.toString());
+        } finally {
+            single.shutdown();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures property reads on a wrapped map, both straight through the
+ * wrapper and from a script reading keys, a missing key, a key holding
+ * null and a Java method a thousand times per call.  Run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) org.openjdk.jmh.Main ScriptableMapBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ScriptableMapBenchmark {
+
+    private Context cx;
+    private Scriptable scope;
+    private Script reads;
+    private Scriptable wrapper;
+
+    @Setup
+    public void setUp() throws Exception {
+        cx = new SugarContextFactory().enterContext();
+        scope = cx.initStandardObjects();
+        Map map = new HashMap();
+        for (int x = 0; x < 20; x++) {
+            map.put("key" + x, Integer.valueOf(x));
+        }
+        map.put("nothing", null);
+        wrapper = (Scriptable)cx.getWrapFactory().wrap(cx, scope, map, Map.class);
+        scope.put("map", scope, wrapper);
+        reads = cx.compileString("var total = 0;"
+                + "for (var x = 0; x < 1000; x++) {"
+                + "  total += map.key1 + map.key7 + map.key19;"
+                + "  if (map.missing === undefined && map.nothing === null) total++;"
+                + "  total += map.size();"
+                + "}"
+                + "total", "reads", 1, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Context.exit();
+    }
+
+    @Benchmark
+    public Object getKey() {
+        return wrapper.get("key7", wrapper);
+    }
+
+    @Benchmark
+    public Object getMissing() {
+        return wrapper.get("missing", wrapper);
+    }
+
+    @Benchmark
+    public Object getMember() {
+        return wrapper.get("size", wrapper);
+    }
+
+    @Benchmark
+    public Object scriptReads() {
+        return reads.exec(cx, scope);
+    }
+}
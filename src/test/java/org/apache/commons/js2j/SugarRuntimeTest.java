@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+import junit.framework.TestCase;
+
+public class SugarRuntimeTest extends TestCase {
+
+    private SugarRuntime runtime;
+
+    protected void setUp() throws Exception {
+        runtime = new SugarRuntime();
+    }
+
+    public void testIsolatedScopes() throws Exception {
+        runtime.evaluateString("x = 1;", "test");
+        
+        assertEquals("undefined", runtime.evaluateString("typeof x", "test"));
+        assertEquals(2, runtime.getExecutionCount());
+        assertTrue(runtime.getStartupNanos() > 0);
+    }
+
+    public void testSealedSharedScope() throws Exception {
+        Object passed = runtime.evaluateString(
+                "passed = false; try { Object.prototype.foo = 1; } catch (e) { passed = true; } passed", "test");
+        
+        assertEquals(Boolean.TRUE, passed);
+    }
+
+    public void testExtensions() throws Exception {
+        Object len = runtime.evaluateString(
+                "list = new java.util.ArrayList(); list.add('foo'); list.length", "test");
+        
+        assertEquals(Integer.valueOf(1), len);
+    }
+
+    public void testThreadContextReused() throws Exception {
+        SugarRuntime.ScopeAction action = new SugarRuntime.ScopeAction() {
+            public Object run(Context cx, Scriptable scope) {
+                return cx;
+            }
+        };
+        
+        assertSame(runtime.call(action), runtime.call(action));
+        assertNull(Context.getCurrentContext());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.js2j;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+public class SugarWrapFactoryTest extends TestScript {
+
+    public void testDispatchTableCached() throws Exception {
+        SugarWrapFactory factory = (SugarWrapFactory)cx.getWrapFactory();
+        run("a = new java.util.ArrayList();");
+        run("b = new java.util.ArrayList();");
+        long misses = factory.getDispatchCacheMisses();
+        long hits = factory.getDispatchCacheHits();
+        
+        run("c = new java.util.ArrayList();");
+        run("c.add('foo');");
+        
+        test("c.length", "1");
+        assertEquals(misses, factory.getDispatchCacheMisses());
+        assertTrue(factory.getDispatchCacheHits() > hits);
+        assertTrue(factory.getWrapCount() >= 3);
+    }
+
+    public void testSharedExtensionFunctions() throws Exception {
+        run("a = new java.util.ArrayList();");
+        run("b = new java.util.LinkedList();");
+        run("a.add('foo');");
+        run("b.add('bar');");
+        
+        test("a.each === b.each", "true");
+        
+        run("found = '';");
+        run("b.each(function(val) { found += val; });");
+        test("found", "bar");
+        
+        run("f = a.each;");
+        run("passed = false;");
+        run("try { f(function(val) {}); } catch (e) { passed = true; }");
+        test("passed", "true");
+    }
+
+    public void testBoundFunctionReused() throws Exception {
+        run("a = new java.util.ArrayList(); a.add('foo');");
+        run("a.asImmutable();");
+        JavaObjectWrapper wrapper = (JavaObjectWrapper)scope.get("a", scope);
+        Object asImmutable = wrapper.get("asImmutable", wrapper);
+        ExtensionFunction bound = wrapper.getBoundFunction(asImmutable);
+        assertNotNull(bound);
+        
+        run("a.asImmutable();");
+        assertSame(bound, wrapper.getBoundFunction(asImmutable));
+    }
+
+    public void testStatelessFunctionNotBound() throws Exception {
+        run("a = new java.util.ArrayList(); a.add('foo'); count = 0;");
+        run("a.each(function(val) { count++; });");
+        run("new java.util.LinkedList(a).each(function(val) { count++; });");
+        JavaObjectWrapper wrapper = (JavaObjectWrapper)scope.get("a", scope);
+        
+        assertNull(wrapper.getBoundFunction(wrapper.get("each", wrapper)));
+        test("count == 2", "true");
+        test("a.sortEach(function(x, y) { return 0; }) === a", "true");
+        test("a.indexOf('foo') === 0", "true");
+    }
+
+    public void testOnlyPrimitiveArraysWrapped() throws Exception {
+        SugarWrapFactory factory = (SugarWrapFactory)cx.getWrapFactory();
+        
+        assertTrue(factory.wrapAsJavaObject(cx, scope, new int[] {1}, int[].class) instanceof ScriptablePrimitiveArray);
+        assertFalse(factory.wrapAsJavaObject(cx, scope, new String[] {"foo"}, String[].class) instanceof ScriptablePrimitiveArray);
+        assertFalse(factory.wrapAsJavaObject(cx, scope, new short[] {1}, short[].class) instanceof ScriptablePrimitiveArray);
+    }
+
+    public void testDefaultRegistryFromIndex() throws Exception {
+        assertNotNull(getClass().getClassLoader().getResource(ExtensionRegistry.INDEX_RESOURCE));
+        
+        Map functions = ExtensionRegistry.getDefault().getExtensionFunctions(ArrayList.class);
+        assertTrue(functions.get("each") instanceof FactoryExtensionFunction);
+        assertTrue(functions.get("sortEach") instanceof FactoryExtensionFunction);
+        assertTrue(functions.get("length") instanceof ExtensionInvoker);
+        assertSame(ExtensionRegistry.getDefault(), new SugarWrapFactory().getRegistry());
+    }
+
+    public void testWrapperCache() throws Exception {
+        SugarWrapFactory factory = (SugarWrapFactory)cx.getWrapFactory();
+        Object list = new ArrayList();
+        Object map = new java.util.HashMap();
+        assertNotSame(factory.wrap(cx, scope, list, null), factory.wrap(cx, scope, list, null));
+        
+        factory.setWrapperCacheSize(1);
+        assertSame(factory.wrap(cx, scope, list, null), factory.wrap(cx, scope, list, null));
+        assertTrue(factory.getWrapperCacheHits() > 0);
+        
+        factory.wrap(cx, scope, map, null);
+        assertTrue(factory.getWrapperCacheEvictions() > 0);
+        assertEquals(1, WrapperCache.forScope(scope, 1).size());
+        
+        long hits = factory.getWrapperCacheHits();
+        long misses = factory.getWrapperCacheMisses();
+        factory.setWrapperCacheSize(4);
+        Object wrapped = factory.wrap(cx, scope, list, null);
+        assertNotSame(wrapped, factory.wrap(cx, scope, list, java.util.List.class));
+        assertSame(wrapped, factory.wrap(cx, scope, list, null));
+        assertEquals(hits + 1, factory.getWrapperCacheHits());
+        assertEquals(misses + 2, factory.getWrapperCacheMisses());
+        assertEquals(4, WrapperCache.forScope(scope, 4).getMaxSize());
+        assertEquals(3, WrapperCache.forScope(scope, 4).size());
+    }
+}
@@ -16,6 +16,14 @@
  */
 package org.apache.commons.js2j;
 
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.mozilla.javascript.Scriptable;
+
 public class WrappersTest extends TestScript {
 
     public void testMapIndex() throws Exception {
@@ -38,6 +46,16 @@ public class WrappersTest extends TestScript {
         test("map.get(\"size\")", "100");
     }
     
+    public void testMapExtensionKeyCollide() throws Exception {
+        script += "map = new java.util.HashMap();\n";
+        script += "map.put('asConcurrent', 'key');\n";
+        run(script);
+        
+        test("typeof map.asConcurrent", "function");
+        test("map.get('asConcurrent') == 'key'", "true");
+        test("map.asConcurrent().get('asConcurrent') == 'key'", "true");
+    }
+    
     public void testBeanIndex() throws Exception {
         script += "bean = new Packages.org.apache.commons.beanutils.LazyDynaBean();\n";
         script += "bean.set(\"foo\", \"bar\");\n";
@@ -90,4 +108,154 @@ public class WrappersTest extends TestScript {
         test("pass", "2.0");
     }
     
+    public void testListForInBreak() throws Exception {
+        script += "list = new java.util.ArrayList();\n";
+        script += "for (i = 0; i < 5000; i++) list.add(i);\n";
+        script += "seen = 0;\n";
+        script += "for (x in list) { if (x == '1500') break; seen++; }\n";
+        run(script);
+        
+        test("seen == 1500", "true");
+        test("typeof x", "string");
+    }
+    
+    public void testMapForIn() throws Exception {
+        script += "map = new java.util.HashMap();\n";
+        script += "map.put('foo', 'bar');\n";
+        script += "map.put('jim', 'sara');\n";
+        script += "map.put('drop', 'me');\n";
+        script += "keys = [];\n";
+        script += "for (x in map) { if (x == 'drop') delete map[x]; else keys.push(x); }\n";
+        run(script);
+        
+        test("keys.sort().join()", "foo,jim");
+        test("map.size()", "2");
+    }
+    
+    public void testForEachValues() throws Exception {
+        script += "list = new java.util.ArrayList();\n";
+        script += "list.add('foo'); list.add('bar');\n";
+        script += "map = new java.util.HashMap();\n";
+        script += "map.put('jim', 'sara');\n";
+        script += "values = [];\n";
+        script += "for each (x in list) values.push(x);\n";
+        script += "for each (x in map) values.push(x);\n";
+        run(script);
+        
+        test("values.join()", "foo,bar,sara");
+    }
+    
+    public void testIndexIdsShared() throws Exception {
+        Object[] ids = ScriptableList.indexIds(2000);
+        assertEquals(2000, ids.length);
+        assertEquals(Integer.valueOf(1999), ids[1999]);
+        assertSame(ids[1000], ScriptableList.indexIds(1500)[1000]);
+        
+        script += "list = new java.util.ArrayList();\n";
+        script += "for (var x = 0; x < 300; x++) list.add(x);\n";
+        script += "count = 0; for (i in list) count++;\n";
+        run(script);
+        test("count == 300", "true");
+    }
+    
+    public void testNativeArrayView() throws Exception {
+        script += "arr = ['foo', 'bar'];\n";
+        script += "view = new Packages.org.apache.commons.js2j.NativeArrayList(arr);\n";
+        script += "view.add('jim');\n";
+        script += "view.remove(0);\n";
+        run(script);
+        
+        test("arr.join()", "bar,jim");
+        test("view.size() == 2", "true");
+        test("new java.util.ArrayList().concat(arr).get(1) == 'jim'", "true");
+        
+        run("view.addAll(1, java.util.Arrays.asList(['a', 'b'])); view.subList(0, 1).clear();");
+        test("arr.join()", "a,b,jim");
+        run("list = new java.util.ArrayList(); list.addItems(arr, 'x');");
+        test("list.size() == 4 && list.get(3) == 'x'", "true");
+    }
+    
+    public void testNativeArrayViewWithoutContext() throws Exception {
+        run("arr = ['foo'];");
+        final NativeArrayList view = new NativeArrayList((org.mozilla.javascript.NativeArray)scope.get("arr", scope));
+        final Throwable[] error = new Throwable[1];
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    view.add(new java.util.Date(0));
+                    view.add(0, "bar");
+                    view.remove(2);
+                } catch (Throwable t) {
+                    error[0] = t;
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        
+        assertNull(error[0]);
+        test("arr.join()", "bar,foo");
+    }
+    
+    public void testListItemsWrapped() throws Exception {
+        script += "list = new java.util.ArrayList();\n";
+        script += "list.add(new java.util.Date(0));\n";
+        script += "list[1] = list[0];\n";
+        run(script);
+        
+        test("list[0].getTime() == 0", "true");
+        test("list.get(1) === list.get(0)", "true");
+    }
+    
+    public void testMapNullValue() throws Exception {
+        script += "map = new java.util.HashMap();\n";
+        script += "map.put('nothing', null);\n";
+        script += "map.put('size', 'key');\n";
+        run(script);
+        
+        test("map.nothing === null", "true");
+        test("map.missing === undefined", "true");
+        test("'nothing' in map && !('missing' in map)", "true");
+        test("typeof map.size", "function");
+    }
+    
+    public void testSortedMapOtherKeys() throws Exception {
+        script += "tree = new java.util.TreeMap();\n";
+        script += "tree.put(1, 'one');\n";
+        run(script);
+        
+        test("tree[1] == 'one' && (1 in tree)", "true");
+        test("tree.foo === undefined && !(2 in tree)", "true");
+        run("tree[1] = 'uno';");
+        test("tree.size() == 1 && tree.get(1) == 'uno'", "true");
+        run("delete tree[1];");
+        test("tree.isEmpty()", "true");
+        
+        run("ints = new java.util.HashMap(); ints.put(new java.lang.Integer(2), 'two'); ints[3] = 'three';");
+        test("ints[2] == 'two' && ints.get('3') == 'three'", "true");
+        run("delete ints[3];");
+        test("ints.size() == 1", "true");
+    }
+    
+    public void testMemberNamesDontPinStaticType() throws Exception {
+        URL classes = getClass().getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader loader = new URLClassLoader(new URL[] {classes}, null);
+        Class type = loader.loadClass(StaticType.class.getName());
+        Scriptable top = cx.initStandardObjects();
+        ScriptableMap map = new ScriptableMap(top, new HashMap(), type, Collections.EMPTY_MAP);
+        assertEquals(Scriptable.NOT_FOUND, map.get("foo", map));
+
+        WeakReference ref = new WeakReference(loader);
+        loader = null;
+        type = null;
+        top = null;
+        map = null;
+        for (int x = 0; x < 50 && ref.get() != null; x++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull("static type loader was pinned", ref.get());
+    }
+
+    public interface StaticType {}
 }